@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.publisher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.teacon.toadsync.common.remote.HashFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hash formats on in-memory input and on local files, where BLAKE3 splits the tree across the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HashBenchmark {
+    @Param({"sha256", "blake3"})
+    public String format;
+
+    @Param({"65536", "67108864"})
+    public int size;
+
+    private HashFormat hashFormat;
+    private byte[] input;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.hashFormat = HashFormat.byId(this.format).orElseThrow();
+        this.input = new byte[this.size];
+        new Random(this.size).nextBytes(this.input);
+        this.file = Files.write(Files.createTempFile("toad-sync-hash", ".bin"), this.input);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public Object hashBytes() {
+        return this.hashFormat.function().hashBytes(this.input);
+    }
+
+    @Benchmark
+    public Object hashFile() throws IOException {
+        return this.hashFormat.hash(this.file);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.publisher;
+
+import com.electronwill.nightconfig.toml.TomlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.teacon.toadsync.common.remote.RemoteManifest;
+import org.teacon.toadsync.common.remote.RemoteMeta;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the TOML and the JSON encodings of a meta with many sync entries and of a manifest with many files, where
+ * the TOML ones are parsed into config trees first and the JSON ones are read in a single pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetaReadBenchmark {
+    private static final URI REMOTE = URI.create("https://example.com/toad-sync/toad-sync-common.toml");
+    private static final URI MANIFEST = URI.create("https://example.com/toad-sync/assets.manifest.toml");
+
+    @Param({"1000", "5000"})
+    public int size;
+
+    private String metaToml;
+    private String metaJson;
+    private String manifestToml;
+    private String manifestJson;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var random = new Random(this.size);
+        var metaToml = new StringBuilder("remote = \"" + REMOTE + "\"\ninterval = 60\n");
+        var metaJson = new StringBuilder("{\"remote\": \"" + REMOTE + "\", \"interval\": 60, \"sync\": {");
+        var manifestToml = new StringBuilder();
+        var manifestJson = new StringBuilder("{\"files\": [");
+        for (var i = 0; i < this.size; ++i) {
+            var hash = HexFormat.of().formatHex(randomBytes(random));
+            var separator = i == 0 ? "" : ", ";
+            metaToml.append("\n[sync.entry-").append(i).append("]\nhash = \"").append(hash)
+                    .append("\"\nfile = \"files/entry-").append(i).append(".zip\"\n");
+            metaJson.append(separator).append("\"entry-").append(i).append("\": {\"hash\": \"").append(hash)
+                    .append("\", \"file\": \"files/entry-").append(i).append(".zip\"}");
+            manifestToml.append("\n[[files]]\nname = \"file-").append(i).append(".png\"\nhash = \"").append(hash)
+                    .append("\"\nfile = \"assets/file-").append(i).append(".png\"\n");
+            manifestJson.append(separator).append("{\"name\": \"file-").append(i).append(".png\", \"hash\": \"")
+                    .append(hash).append("\", \"file\": \"assets/file-").append(i).append(".png\"}");
+        }
+        this.metaToml = metaToml.toString();
+        this.metaJson = metaJson.append("}}").toString();
+        this.manifestToml = manifestToml.toString();
+        this.manifestJson = manifestJson.append("]}").toString();
+    }
+
+    private static byte[] randomBytes(Random random) {
+        var bytes = new byte[32];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public Object readMetaToml() {
+        return RemoteMeta.of().read(new TomlParser().parse(new StringReader(this.metaToml)));
+    }
+
+    @Benchmark
+    public Object readMetaJson() {
+        return RemoteMeta.of().readJson(new StringReader(this.metaJson));
+    }
+
+    @Benchmark
+    public Object readManifestToml() {
+        return RemoteManifest.read(new TomlParser().parse(new StringReader(this.manifestToml)), MANIFEST);
+    }
+
+    @Benchmark
+    public Object readManifestJson() {
+        return RemoteManifest.readJson(new StringReader(this.manifestJson), MANIFEST);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.publisher;
+
+import com.electronwill.nightconfig.core.io.WritingMode;
+import com.electronwill.nightconfig.toml.TomlFormat;
+import com.google.common.hash.Hashing;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the optional variants next to a published artifact.
+ * <p>
+ * A block index ({@code <artifact>.blocks.toml}) lists the SHA-256 hashes of the fixed-size blocks of the artifact,
+ * so that a delta update could find out which blocks have changed. A precompressed variant ({@code <artifact>.gz})
+ * could be served by static file servers to clients which accept gzip, and it is only kept if it is smaller.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class ArtifactVariants {
+    private ArtifactVariants() {
+    }
+
+    public static Path writeBlocks(Path artifact, int blockSize) throws IOException {
+        var hashes = new ArrayList<String>();
+        try (var in = Files.newInputStream(artifact)) {
+            for (var block = in.readNBytes(blockSize); block.length > 0; block = in.readNBytes(blockSize)) {
+                hashes.add(Hashing.sha256().hashBytes(block).toString());
+            }
+        }
+        var index = TomlFormat.newConfig(LinkedHashMap::new);
+        index.set("block-size", blockSize);
+        index.set("hashes", hashes);
+        var location = artifact.resolveSibling(artifact.getFileName() + ".blocks.toml");
+        TomlFormat.instance().createWriter().write(index, location, WritingMode.REPLACE);
+        return location;
+    }
+
+    public static Optional<Path> writeGzip(Path artifact) throws IOException {
+        var location = artifact.resolveSibling(artifact.getFileName() + ".gz");
+        // the gzip header written by the jdk has no timestamp or file name, so the output is deterministic
+        try (var out = new GZIPOutputStream(Files.newOutputStream(location))) {
+            Files.copy(artifact, out);
+        }
+        if (Files.size(location) < Files.size(artifact)) {
+            return Optional.of(location);
+        }
+        Files.delete(location);
+        return Optional.empty();
+    }
+}
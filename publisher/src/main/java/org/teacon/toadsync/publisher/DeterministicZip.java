@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.publisher;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs a directory into a zip whose bytes only depend on the contents of the files.
+ * <p>
+ * Entries are sorted by their paths, directory entries and hidden files are omitted, and all the entries share a
+ * fixed timestamp. Files which have already been compressed (such as PNG images and OGG sounds) are STORED, since
+ * deflating them again only costs time on both sides.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class DeterministicZip {
+    private static final LocalDateTime FIXED_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+    private static final Set<String> COMPRESSED = Set.of("png", "ogg", "jpg", "jpeg", "zip", "jar", "gz", "mp3");
+
+    private DeterministicZip() {
+    }
+
+    public static void write(Path dir, Path zip) throws IOException {
+        var files = new TreeMap<String, Path>();
+        try (var walk = Files.walk(dir)) {
+            for (var file : (Iterable<Path>) walk::iterator) {
+                var relative = dir.relativize(file);
+                if (Files.isRegularFile(file) && !ToadSyncPublisher.isHidden(relative)) {
+                    // zip entries are always separated by slashes whatever the platform is
+                    var name = new StringJoiner("/");
+                    for (var part : relative) {
+                        name.add(part.toString());
+                    }
+                    files.put(name.toString(), file);
+                }
+            }
+        }
+        try (var out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.setLevel(Deflater.BEST_COMPRESSION);
+            for (var file : files.entrySet()) {
+                var entry = new ZipEntry(file.getKey());
+                // the local time is written as is, so that the timestamp does not depend on the time zone
+                entry.setTimeLocal(FIXED_TIME);
+                if (isCompressed(file.getKey())) {
+                    // stored entries need their sizes and checksums before the data, which takes a first pass
+                    var crc = new CRC32();
+                    var size = checksum(file.getValue(), crc);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(size);
+                    entry.setCompressedSize(size);
+                    entry.setCrc(crc.getValue());
+                } else {
+                    entry.setMethod(ZipEntry.DEFLATED);
+                }
+                out.putNextEntry(entry);
+                Files.copy(file.getValue(), out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static long checksum(Path file, CRC32 crc) throws IOException {
+        try (var in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static boolean isCompressed(String name) {
+        var dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.publisher;
+
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
+import com.google.gson.stream.JsonWriter;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.TemporalAccessor;
+import java.util.List;
+
+/**
+ * Writes a config in the JSON encoding of the meta and the manifests, which has the same structure as the TOML one.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class JsonConfigWriter {
+    private JsonConfigWriter() {
+    }
+
+    public static void write(UnmodifiableConfig config, Path path) throws IOException {
+        try (var writer = new JsonWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            write(writer, config);
+        }
+    }
+
+    private static void write(JsonWriter writer, @Nullable Object value) throws IOException {
+        switch (value) {
+            case UnmodifiableConfig config -> {
+                writer.beginObject();
+                for (var entry : config.entrySet()) {
+                    writer.name(entry.getKey());
+                    write(writer, entry.getValue());
+                }
+                writer.endObject();
+            }
+            case List<?> list -> {
+                writer.beginArray();
+                for (var element : list) {
+                    write(writer, element);
+                }
+                writer.endArray();
+            }
+            case String s -> writer.value(s);
+            case Number n -> writer.value(n);
+            case Boolean b -> writer.value(b);
+            // date times are written in RFC 3339, which are parsed the same way as the TOML ones
+            case TemporalAccessor t -> writer.value(t.toString());
+            case null -> writer.nullValue();
+            default -> throw new IOException("Unsupported value: " + value);
+        }
+    }
+}
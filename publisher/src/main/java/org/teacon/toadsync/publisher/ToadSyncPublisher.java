@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.publisher;
+
+import com.electronwill.nightconfig.core.CommentedConfig;
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.electronwill.nightconfig.core.io.WritingMode;
+import com.electronwill.nightconfig.toml.TomlFormat;
+import com.electronwill.nightconfig.toml.TomlParser;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.teacon.toadsync.common.remote.HashFormat;
+import org.teacon.toadsync.common.remote.RemoteManifest;
+import org.teacon.toadsync.common.remote.RemoteMeta;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the meta, the manifests and the artifacts to be published from a directory.
+ * <p>
+ * Each top level entry of the input directory becomes a sync entry, whose id is the file name before the first
+ * dot. A regular file is published as is, a directory with a {@code pack.mcmeta} is packed into a deterministic
+ * zip, and any other directory becomes a manifest of the files (or packs) inside it, in the order of their names.
+ * All the links are written relative to the remote link of the meta, so that the output directory could be uploaded
+ * as a whole. The sections are read back with the same parser as the clients before they are written.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class ToadSyncPublisher {
+    private static final String META_NAME = "toad-sync-common.toml";
+    private static final String JSON_META_NAME = "toad-sync-common.json";
+    private static final Pattern ID = Pattern.compile("[a-z][a-z0-9_-]*");
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.+-]*");
+    private static final String USAGE = "Usage: publisher <input> <output> --remote <url> --interval <seconds> "
+            + "[--blocks <KiB>] [--precompress] [--json]";
+
+    private final Path input;
+    private final Path output;
+    private final URI remote;
+    private final double interval;
+    private final int blockSize;
+    private final boolean precompress;
+    private final boolean json;
+
+    private ToadSyncPublisher(Path input, Path output, URI remote,
+                              double interval, int blockSize, boolean precompress, boolean json) {
+        this.input = input;
+        this.output = output;
+        this.remote = remote;
+        this.interval = interval;
+        this.blockSize = blockSize;
+        this.precompress = precompress;
+        this.json = json;
+    }
+
+    public static void main(String[] args) {
+        try {
+            parse(args).publish();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException | ParsingException e) {
+            e.printStackTrace(System.err);
+            System.exit(2);
+        }
+    }
+
+    public static boolean isHidden(Path relative) {
+        for (var part : relative) {
+            if (part.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ToadSyncPublisher parse(String[] args) {
+        var paths = new ArrayList<Path>();
+        var remote = (URI) null;
+        var interval = (Double) null;
+        var blockSize = 0;
+        var precompress = false;
+        var json = false;
+        for (var i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--remote" -> remote = parseRemote(value(args, ++i));
+                case "--interval" -> interval = parseNumber(value(args, ++i), 5e-4);
+                case "--blocks" -> blockSize = Math.toIntExact(Math.round(parseNumber(value(args, ++i), 1.0) * 1024));
+                case "--precompress" -> precompress = true;
+                case "--json" -> json = true;
+                case String s when s.startsWith("--") -> throw new IllegalArgumentException("Unknown option: " + s);
+                case String s -> paths.add(Path.of(s));
+            }
+        }
+        if (paths.size() != 2 || remote == null || interval == null) {
+            throw new IllegalArgumentException("The input, the output, the remote and the interval should be given");
+        }
+        return new ToadSyncPublisher(paths.get(0), paths.get(1), remote, interval, blockSize, precompress, json);
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of option: " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static URI parseRemote(String value) {
+        try {
+            var uri = new URI(value);
+            if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+                throw new IllegalArgumentException("Unsupported protocol of remote: " + value);
+            }
+            return uri;
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid remote: " + value, e);
+        }
+    }
+
+    private static double parseNumber(String value, double min) {
+        try {
+            var number = Double.parseDouble(value);
+            if (!(number >= min) || number > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Number out of range: " + value);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value, e);
+        }
+    }
+
+    private void publish() throws IOException, ParsingException {
+        if (!Files.isDirectory(this.input)) {
+            throw new IllegalArgumentException("Input is not a directory: " + this.input);
+        }
+        Files.createDirectories(this.output);
+        var sync = TomlFormat.newConfig(LinkedHashMap::new);
+        var entries = new LinkedHashMap<String, RemoteMeta.Entry>();
+        for (var child : this.children(this.input)) {
+            var name = child.getFileName().toString();
+            var id = name.contains(".") ? name.substring(0, name.indexOf('.')) : name;
+            if (!ID.matcher(id).matches()) {
+                throw new IllegalArgumentException("Invalid id of " + child + ": " + id);
+            }
+            if (sync.contains(id)) {
+                throw new IllegalArgumentException("Duplicate id of " + child + ": " + id);
+            }
+            var isPack = Files.isRegularFile(child.resolve("pack.mcmeta"));
+            var entry = Files.isDirectory(child) && !isPack ? this.publishManifest(id, child)
+                    : this.publishFile(child, this.output, isPack ? id + ".zip" : name);
+            var section = TomlFormat.newConfig(LinkedHashMap::new);
+            entry.write(section, this.remote);
+            if (!RemoteMeta.Entry.read(section, this.remote).equals(entry)) {
+                throw new ParsingException("Mismatched section of " + id + ": " + section);
+            }
+            sync.set(id, section);
+            entries.put(id, entry);
+            System.out.println("Published " + id + ": " + entry.hash());
+        }
+        // clients replace their local config with the fetched meta, so the remote and the interval are kept in it
+        var meta = TomlFormat.newConfig(LinkedHashMap::new);
+        var integral = this.interval == Math.rint(this.interval);
+        meta.set("remote", this.remote.toString());
+        meta.set("interval", integral ? (Object) (long) this.interval : this.interval);
+        meta.set("sync", sync);
+        var location = this.output.resolve(this.json ? JSON_META_NAME : META_NAME);
+        if (this.json) {
+            JsonConfigWriter.write(meta, location);
+        } else {
+            TomlFormat.instance().createWriter().write(meta, location, WritingMode.REPLACE);
+        }
+        // the published document is read back on its own, the same way as a client restarting with it
+        var published = (RemoteMeta) null;
+        try (var reader = Files.newBufferedReader(location, StandardCharsets.UTF_8)) {
+            var empty = RemoteMeta.of();
+            published = this.json ? empty.readJson(reader) : empty.read(new TomlParser().parse(reader));
+        }
+        if (!this.remote.equals(published.remote().orElse(null)) || !published.syncEntries().equals(entries)) {
+            throw new ParsingException("Mismatched meta read back from " + location);
+        }
+        System.out.println("Published meta: " + location);
+    }
+
+    private RemoteMeta.Entry publishManifest(String id, Path dir) throws IOException, ParsingException {
+        var location = this.json
+                ? this.output.resolve(id + ".manifest.json") : RemoteManifest.location(this.output, id);
+        var link = this.remote.resolve(location.getFileName().toString());
+        var files = new ArrayList<CommentedConfig>();
+        var target = this.output.resolve(id);
+        Files.createDirectories(target);
+        for (var child : this.children(dir)) {
+            var name = child.getFileName().toString();
+            if (Files.isDirectory(child)) {
+                if (!Files.isRegularFile(child.resolve("pack.mcmeta"))) {
+                    throw new IllegalArgumentException("Nested manifest unsupported: " + child);
+                }
+                name = name + ".zip";
+            }
+            if (!FILE_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid file name of " + child + ": " + name);
+            }
+            var entry = this.publishFile(child, target, name);
+            var file = TomlFormat.newConfig(LinkedHashMap::new);
+            file.set("name", name);
+            entry.write(file, link);
+            files.add(file);
+        }
+        var manifest = TomlFormat.newConfig(LinkedHashMap::new);
+        manifest.set("files", files);
+        if (this.json) {
+            JsonConfigWriter.write(manifest, location);
+        } else {
+            TomlFormat.instance().createWriter().write(manifest, location, WritingMode.REPLACE);
+        }
+        RemoteManifest.read(location, link);
+        return this.entry(location, link, RemoteMeta.EntryType.MANIFEST);
+    }
+
+    private RemoteMeta.Entry publishFile(Path source, Path dir, String name) throws IOException {
+        var target = dir.resolve(name);
+        if (Files.isDirectory(source)) {
+            DeterministicZip.write(source, target);
+        } else {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.writeVariants(target);
+        var link = this.remote.resolve(this.output.relativize(target).toString().replace('\\', '/'));
+        return this.entry(target, link, RemoteMeta.EntryType.FILE);
+    }
+
+    private RemoteMeta.Entry entry(Path file, URI link, RemoteMeta.EntryType type) throws IOException {
+        return new RemoteMeta.Entry(HashFormat.SHA256.hash(file), HashFormat.SHA256, link, type);
+    }
+
+    private void writeVariants(Path artifact) throws IOException {
+        if (this.blockSize > 0) {
+            ArtifactVariants.writeBlocks(artifact, this.blockSize);
+        }
+        if (this.precompress) {
+            ArtifactVariants.writeGzip(artifact);
+        }
+    }
+
+    private List<Path> children(Path dir) throws IOException {
+        try (var list = Files.list(dir)) {
+            return list.filter(p -> !isHidden(p.getFileName())).sorted().toList();
+        }
+    }
+}
@@ -25,6 +25,15 @@ import net.neoforged.api.distmarker.Dist;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 /**
  * Service Provider Interface (SPI) for ToadSync.
@@ -35,10 +44,14 @@ import java.nio.file.Path;
  * Java SPI</a>.
  * <p>
  * Implementations are identified by a unique {@link #id()}. ToadSync reads remote TOML metadata,
- * locating a {@code sync.{{id}}} section that provides the download URL and SHA-256 hash for an
- * artifact. The file is saved to the location specified by {@link #artifact()}, and then passed to
- * either {@link #load} or {@link #update} depending on whether it is a first-time load or an update
- * to a previously loaded version.
+ * locating a {@code sync.{{id}}} section that provides the download URL and hash (SHA-256 by default,
+ * or another format declared by {@code hash-format}) for an artifact. The file is saved to the location
+ * specified by {@link #artifact()}, and then passed to either {@link #load} or {@link #update} depending
+ * on whether it is a first-time load or an update to a previously loaded version.
+ * <p>
+ * A {@code sync.{{id}}} section of {@code type = "manifest"} instead links to a manifest listing several
+ * files, each of which has its own hash. Only the changed files are downloaded, and the whole file set
+ * is then passed to either {@link #loadFiles} or {@link #updateFiles}.
  *
  * @author TeaConMC
  */
@@ -75,32 +88,247 @@ public interface ToadSyncProvider {
      */
     boolean enabled(Dist dist);
 
+    /**
+     * Returns the download priority of the artifact. When the transfers of several artifacts are waiting
+     * for download slots, the ones with higher priorities are started first. Small artifacts which should
+     * be ready before the next launch of the game are expected to return higher priorities.
+     * <p>
+     * The default priority is zero.
+     *
+     * @return the download priority of the artifact
+     */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * Returns the IDs of the providers whose local artifacts should be loaded before the one of this
+     * provider when the game starts. IDs of unknown or disabled providers are ignored, and cyclic
+     * dependencies are rejected.
+     * <p>
+     * There are no dependencies by default.
+     *
+     * @return the IDs of the providers this provider depends on
+     */
+    default Set<String> dependencies() {
+        return Set.of();
+    }
+
+    /**
+     * Indicates whether the local artifact could be hashed and loaded on a worker thread when the game
+     * starts, in parallel with the artifacts of other providers. Otherwise, {@link #load} and
+     * {@link #loadFiles} are called on the thread which bootstraps ToadSync.
+     * <p>
+     * Off-thread loading is disabled by default.
+     *
+     * @return true if the local artifact could be loaded off-thread
+     */
+    default boolean loadsOffThread() {
+        return false;
+    }
+
+    /**
+     * Indicates whether the game should wait for the local artifact to be loaded before it continues
+     * starting up. Artifacts which are not needed by the game until later could return {@code false},
+     * so that they are loaded in the background. This only takes effect if {@link #loadsOffThread()}
+     * returns {@code true}. Resource packs and data packs are still discovered after all the artifacts
+     * are loaded.
+     * <p>
+     * The game waits for all the artifacts by default.
+     *
+     * @return true if the game should wait for the local artifact to be loaded
+     */
+    default boolean awaitedOnBootstrap() {
+        return true;
+    }
+
+    /**
+     * Returns the executor on which the artifact is loaded or updated while the game is running. Providers whose
+     * work is bound to a specific thread could return an executor of that thread, such as the client thread for
+     * render-related work. Blocking work is expected to stay on the default executor of workers.
+     * <p>
+     * The default executor of workers is returned by default.
+     *
+     * @param  workers the default executor of ToadSync workers
+     * @return the executor on which the artifact is loaded or updated
+     */
+    default Executor executor(Executor workers) {
+        return workers;
+    }
+
+    /**
+     * Returns how long the artifact is allowed to be loaded or updated while the game is running. A provider
+     * which does not finish in time is reported and left running, so that it could not stall the other providers
+     * of the same revision, which are applied at the same time.
+     * <p>
+     * The default timeout is one minute.
+     *
+     * @return the timeout of loading or updating the artifact
+     */
+    default Duration timeout() {
+        return Duration.ofMinutes(1L);
+    }
+
+    /**
+     * Opens a stream to receive a new artifact while it is being downloaded, so that work such as indexing or
+     * decompressing could be done during the download, and {@link #load} or {@link #update} could finish quickly
+     * after the artifact is verified. See {@link ToadSyncStream} for the order of calls.
+     * <p>
+     * Only the artifacts of single-file sync entries are streamed, and an artifact may be installed without being
+     * streamed (for example if the same content has been downloaded for another provider at the same time), so
+     * {@link #load} and {@link #update} should still be able to work on the file alone.
+     * <p>
+     * No stream is opened by default.
+     *
+     * @param  expectedHash the expected hash of the new artifact
+     * @return the stream to receive the new artifact, or empty if it is not needed
+     */
+    default Optional<ToadSyncStream> openStream(HashCode expectedHash) {
+        return Optional.empty();
+    }
+
     /**
      * Called to initially load the artifact when it is loaded for the first time. The provided hash is
-     * the verified SHA-256 checksum of the file. The {@code artifactLocation} parameter specifies the
-     * file path of the downloaded artifact, which matches the file name returned by {@link #artifact()}.
+     * the verified checksum of the file (SHA-256 unless the sync entry declares another hash format). The
+     * {@code artifactLocation} parameter specifies the file path of the downloaded artifact, which matches
+     * the file name returned by {@link #artifact()}.
      * <p>
      * This method is guaranteed to be called at most once, and always before any call to {@link #update}.
      *
-     * @param  initHash         the SHA-256 hash of the new artifact
+     * @param  initHash         the hash (in the entry's hash format) of the new artifact
      * @param  artifactLocation the path to the downloaded artifact file (matches {@link #artifact()})
      * @throws IOException      if loading fails
      */
     void load(HashCode initHash, Path artifactLocation) throws IOException;
 
     /**
-     * Called to update an existing artifact to a newer one. The old SHA-256 hashes and new SHA-256
-     * hashes are provided as hints for the implementation's reference. The {@code artifactLocation}
+     * Called to update an existing artifact to a newer one. The old hashes and new hashes (in the hash
+     * format of the entry) are provided as hints for the implementation's reference. The {@code artifactLocation}
      * parameter specifies the path to the new artifact file, which matches the file name returned by
      * {@link #artifact()}.
      * <p>
-     * This method is only called when the artifact content has changed (i.e., the SHA-256 hash has
-     * changed), and only after {@link #load} has been successfully called once.
+     * This method is only called when the artifact content has changed (i.e., the hash has changed),
+     * and only after {@link #load} has been successfully called once.
      *
-     * @param  oldHash          the SHA-256 hash of the old artifact
-     * @param  newHash          the SHA-256 hash of the new artifact
+     * @param  oldHash          the hash (in the entry's hash format) of the old artifact
+     * @param  newHash          the hash (in the entry's hash format) of the new artifact
      * @param  artifactLocation the path to the new artifact file (matches {@link #artifact()})
      * @throws IOException      if the update process fails
      */
     void update(HashCode oldHash, HashCode newHash, Path artifactLocation) throws IOException;
+
+    /**
+     * Called instead of {@link #load} when the artifact is a manifest of multiple files. The provided hash
+     * is the verified checksum of the manifest. The {@code files} parameter lists the verified files in the
+     * order of the manifest, all of which are located in a directory managed by ToadSync.
+     * <p>
+     * The default implementation rejects multi-file artifacts.
+     *
+     * @param  initHash    the hash of the new manifest
+     * @param  files       the paths to the files listed by the manifest
+     * @throws IOException if loading fails or multi-file artifacts are not supported
+     */
+    default void loadFiles(HashCode initHash, List<Path> files) throws IOException {
+        throw new IOException("Multi-file artifacts unsupported by " + this.id() + " provider");
+    }
+
+    /**
+     * Called instead of {@link #update} when the artifact is a manifest of multiple files. The old and
+     * new hashes of the manifest are provided as hints. The {@code files} parameter lists all the files
+     * of the new manifest, whether they have been changed or not.
+     * <p>
+     * The default implementation rejects multi-file artifacts.
+     *
+     * @param  oldHash     the hash of the old artifact or manifest
+     * @param  newHash     the hash of the new manifest
+     * @param  files       the paths to the files listed by the new manifest
+     * @throws IOException if the update process fails or multi-file artifacts are not supported
+     */
+    default void updateFiles(HashCode oldHash, HashCode newHash, List<Path> files) throws IOException {
+        throw new IOException("Multi-file artifacts unsupported by " + this.id() + " provider");
+    }
+
+    /**
+     * The asynchronous variant of {@link #load}, which is called instead of it while the game is running. Local
+     * artifacts are still loaded by {@link #load} when the game starts.
+     * <p>
+     * The default implementation calls {@link #load} on the given executor.
+     *
+     * @param  initHash         the hash of the new artifact
+     * @param  artifactLocation the path to the downloaded artifact file (matches {@link #artifact()})
+     * @param  executor         the executor returned by {@link #executor}
+     * @return the stage completed when the artifact is loaded
+     */
+    default CompletionStage<Void> loadAsync(HashCode initHash, Path artifactLocation, Executor executor) {
+        return runAsync(() -> {
+            this.load(initHash, artifactLocation);
+            return null;
+        }, executor);
+    }
+
+    /**
+     * The asynchronous variant of {@link #update}, which is called instead of it while the game is running.
+     * <p>
+     * The default implementation calls {@link #update} on the given executor.
+     *
+     * @param  oldHash          the hash of the old artifact
+     * @param  newHash          the hash of the new artifact
+     * @param  artifactLocation the path to the new artifact file (matches {@link #artifact()})
+     * @param  executor         the executor returned by {@link #executor}
+     * @return the stage completed when the artifact is updated
+     */
+    default CompletionStage<Void> updateAsync(HashCode oldHash, HashCode newHash, Path artifactLocation,
+                                              Executor executor) {
+        return runAsync(() -> {
+            this.update(oldHash, newHash, artifactLocation);
+            return null;
+        }, executor);
+    }
+
+    /**
+     * The asynchronous variant of {@link #loadFiles}, which is called instead of it while the game is running.
+     * Local artifacts are still loaded by {@link #loadFiles} when the game starts.
+     * <p>
+     * The default implementation calls {@link #loadFiles} on the given executor.
+     *
+     * @param  initHash the hash of the new manifest
+     * @param  files    the paths to the files listed by the manifest
+     * @param  executor the executor returned by {@link #executor}
+     * @return the stage completed when the files are loaded
+     */
+    default CompletionStage<Void> loadFilesAsync(HashCode initHash, List<Path> files, Executor executor) {
+        return runAsync(() -> {
+            this.loadFiles(initHash, files);
+            return null;
+        }, executor);
+    }
+
+    /**
+     * The asynchronous variant of {@link #updateFiles}, which is called instead of it while the game is running.
+     * <p>
+     * The default implementation calls {@link #updateFiles} on the given executor.
+     *
+     * @param  oldHash  the hash of the old artifact or manifest
+     * @param  newHash  the hash of the new manifest
+     * @param  files    the paths to the files listed by the new manifest
+     * @param  executor the executor returned by {@link #executor}
+     * @return the stage completed when the files are updated
+     */
+    default CompletionStage<Void> updateFilesAsync(HashCode oldHash, HashCode newHash, List<Path> files,
+                                                   Executor executor) {
+        return runAsync(() -> {
+            this.updateFiles(oldHash, newHash, files);
+            return null;
+        }, executor);
+    }
+
+    private static CompletionStage<Void> runAsync(Callable<?> task, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.spi;
+
+import com.google.common.hash.HashCode;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the bytes of a new artifact while it is being downloaded, opened by {@link ToadSyncProvider#openStream}.
+ * <p>
+ * Chunks are passed to {@link #write} in order, before the hash of the artifact is verified. Then exactly one of
+ * {@link #commit} and {@link #abort} is called: {@link #commit} if the whole artifact matches the expected hash, or
+ * {@link #abort} if the download fails, is cancelled, or results in a mismatched hash. Calls are never concurrent,
+ * but they may come from different threads, and none of them comes after {@link #commit} or {@link #abort}.
+ * <p>
+ * A committed artifact is then passed to {@link ToadSyncProvider#load} or {@link ToadSyncProvider#update} as usual,
+ * unless the other artifacts of the same revision fail, in which case the committed work is never used. Work prepared
+ * by a stream is therefore expected to be keyed by the hash of the artifact.
+ *
+ * @author TeaConMC
+ */
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public interface ToadSyncStream {
+
+    /**
+     * Called with the next chunk of the artifact, which has not been verified yet. The buffer is read-only, and it
+     * is only valid during the call.
+     *
+     * @param  chunk       the next chunk of the artifact
+     * @throws IOException if the chunk could not be consumed, which fails the download
+     */
+    void write(ByteBuffer chunk) throws IOException;
+
+    /**
+     * Called after all the chunks are written and the hash of the artifact is verified.
+     *
+     * @param  hash        the verified hash of the artifact
+     * @throws IOException if the work could not be finished, which fails the download
+     */
+    void commit(HashCode hash) throws IOException;
+
+    /**
+     * Called if the artifact is rejected, after which the work prepared by the stream should be discarded.
+     *
+     * @param cause the reason why the artifact is rejected
+     */
+    void abort(Throwable cause);
+}
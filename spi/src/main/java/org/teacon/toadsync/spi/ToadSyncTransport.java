@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.spi;
+
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Transfers the artifacts whose file links have the URI schemes other than {@code data}, {@code http} and
+ * {@code https}. Implementations of the interface are discovered via Java SPI in the same way as
+ * {@link ToadSyncProvider}, and a built-in one handles {@code file} links.
+ * <p>
+ * A transport only copies the bytes of an artifact to a temporary file. The hash of the file is verified by ToadSync
+ * afterward, before the file is streamed to {@link ToadSyncStream} and installed, so a transport is not required to
+ * verify anything. Transfers of a transport bypass the HTTP client, the download scheduler and the bandwidth limits.
+ *
+ * @author TeaConMC
+ */
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public interface ToadSyncTransport {
+
+    /**
+     * Returns the lowercase URI schemes handled by this transport. Schemes handled by ToadSync itself ({@code data},
+     * {@code http} and {@code https}) are ignored, and a scheme handled by several transports is assigned to the
+     * first of them.
+     *
+     * @return the URI schemes handled by this transport
+     */
+    Set<String> schemes();
+
+    /**
+     * Copies the content of the source to the target. The target is an empty file in a directory managed by
+     * ToadSync, which could be replaced (for example by a link to the source) rather than written.
+     *
+     * @param  source      the file link of the artifact, whose scheme is one of {@link #schemes()}
+     * @param  target      the temporary file which receives the content
+     * @throws IOException if the transfer fails
+     */
+    void transfer(URI source, Path target) throws IOException;
+
+    /**
+     * The asynchronous variant of {@link #transfer}, which is called instead of it.
+     * <p>
+     * The default implementation calls {@link #transfer} on the given executor.
+     *
+     * @param  source   the file link of the artifact, whose scheme is one of {@link #schemes()}
+     * @param  target   the temporary file which receives the content
+     * @param  executor the default executor of ToadSync workers
+     * @return the stage completed when the content is transferred
+     */
+    default CompletionStage<Void> transferAsync(URI source, Path target, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                this.transfer(source, target);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
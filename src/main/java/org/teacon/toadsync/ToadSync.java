@@ -38,6 +38,7 @@ public final class ToadSync {
     public static final ToadObjects OBJECTS = new ToadObjects();
     public static final Path CONFIG_DIR = FMLPaths.CONFIGDIR.get().resolve("toad-sync");
     public static final Path CONFIG = FMLPaths.CONFIGDIR.get().resolve("toad-sync-common.toml");
+    public static final Path TRANSPORTS = FMLPaths.CONFIGDIR.get().resolve("toad-sync-transports.toml");
 
     public ToadSync(IEventBus bus) {
         ToadEventHandler.init(bus);
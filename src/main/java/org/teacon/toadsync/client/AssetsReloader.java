@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.client;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.font.FontManager;
+import net.minecraft.client.gui.screens.LoadingOverlay;
+import net.minecraft.client.resources.language.LanguageManager;
+import net.minecraft.client.sounds.SoundManager;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+import net.minecraft.server.packs.resources.PreparableReloadListener;
+import net.minecraft.server.packs.resources.ReloadableResourceManager;
+import net.minecraft.server.packs.resources.SimpleReloadInstance;
+import net.minecraft.util.Unit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.teacon.toadsync.mixin.ReloadableResourceManagerAccessor;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reloads the client resources affected by the changed entries of the assets packs.
+ * <p>
+ * Changed entries are classified by their directories, and only the reload listeners of the affected categories
+ * run, behind the same loading overlay as {@code F3 + T}. Partial reloads are limited to languages, sounds and fonts,
+ * whose listeners are known to be the only readers. Any other entry (such as textures and models, which are also
+ * read by the listeners of other mods, or the pack metadata) falls back to a full reload. Reloads only happen at a
+ * safe moment, which is when the player is not in a world, or when a pause screen is opened.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class AssetsReloader {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static boolean tryReload(Set<String> changed) {
+        var minecraft = Minecraft.getInstance();
+        if (minecraft.getOverlay() != null) {
+            return false;
+        }
+        if (minecraft.level != null && (minecraft.screen == null || !minecraft.screen.isPauseScreen())) {
+            return false;
+        }
+        if (changed.isEmpty()) {
+            return true;
+        }
+        var categories = classify(changed);
+        if (categories.isEmpty()) {
+            LOGGER.info("Reload all resource packs since {} changed entries could not be classified", changed.size());
+            minecraft.reloadResourcePacks();
+            return true;
+        }
+        LOGGER.info("Reload resource packs partially for {} changed entries ({})", changed.size(), categories.get());
+        var repository = minecraft.getResourcePackRepository();
+        repository.reload();
+        var manager = (ReloadableResourceManager) minecraft.getResourceManager();
+        var accessor = (ReloadableResourceManagerAccessor) manager;
+        accessor.getResources().close();
+        accessor.setResources(new MultiPackResourceManager(PackType.CLIENT_RESOURCES, repository.openAllSelected()));
+        var listeners = accessor.getListeners().stream().filter(l -> affected(l, categories.get())).toList();
+        var initial = CompletableFuture.completedFuture(Unit.INSTANCE);
+        var executor = Util.backgroundExecutor();
+        var profiled = LOGGER.isDebugEnabled();
+        var reload = SimpleReloadInstance.create(manager, listeners, executor, minecraft, initial, profiled);
+        minecraft.setOverlay(new LoadingOverlay(minecraft, reload, error -> error.ifPresent(e -> {
+            LOGGER.warn("Failed to reload resource packs partially, fall back to a full reload", e);
+            minecraft.reloadResourcePacks();
+        }), true));
+        return true;
+    }
+
+    private static Optional<EnumSet<Category>> classify(Set<String> changed) {
+        var categories = EnumSet.noneOf(Category.class);
+        for (var entry : changed) {
+            // assets/<namespace>/<directory>/<path>, except for sounds.json which is at the namespace root
+            var split = entry.split("/", 4);
+            if (split.length < 3 || !"assets".equals(split[0])) {
+                return Optional.empty();
+            }
+            var root = split.length == 3;
+            var category = root ? "sounds.json".equals(split[2]) ? Category.SOUNDS : null : switch (split[2]) {
+                case "lang" -> Category.LANGUAGE;
+                case "sounds" -> Category.SOUNDS;
+                case "font" -> Category.FONTS;
+                default -> null;
+            };
+            if (category == null) {
+                return Optional.empty();
+            }
+            categories.add(category);
+        }
+        return Optional.of(categories);
+    }
+
+    private static boolean affected(PreparableReloadListener listener, Set<Category> categories) {
+        return switch (listener) {
+            case LanguageManager ignored -> categories.contains(Category.LANGUAGE);
+            case SoundManager ignored -> categories.contains(Category.SOUNDS);
+            case FontManager ignored -> categories.contains(Category.FONTS);
+            default -> false;
+        };
+    }
+
+    private enum Category {
+        LANGUAGE, SOUNDS, FONTS
+    }
+}
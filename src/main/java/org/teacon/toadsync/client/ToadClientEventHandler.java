@@ -20,19 +20,51 @@ package org.teacon.toadsync.client;
 
 import net.minecraft.FieldsAreNonnullByDefault;
 import net.minecraft.MethodsReturnNonnullByDefault;
+import net.minecraft.client.KeyMapping;
 import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.Component;
+import net.minecraft.sounds.SoundSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.teacon.toadsync.ToadSync;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
 @ParametersAreNonnullByDefault
 public final class ToadClientEventHandler {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Set<String> LEVEL_RENDERER_OPTIONS = Set.of(
+            "graphicsMode", "ao", "renderClouds", "biomeBlendRadius", "renderDistance", "prioritizeChunkUpdates");
+
     public static void bootstrap() {
-        ToadSync.OBJECTS.setUpdateTitleHook(() -> Minecraft.getInstance().updateTitle());
+        // the title may be loaded or updated on a worker thread, while the window is only touched on the client
+        ToadSync.OBJECTS.setUpdateTitleHook(() -> {
+            var minecraft = Minecraft.getInstance();
+            minecraft.execute(minecraft::updateTitle);
+        });
+        ToadSync.OBJECTS.setOptionsApplyHook(swap -> {
+            // noinspection ConstantValue
+            if (Minecraft.getInstance() == null || Minecraft.getInstance().options == null) {
+                // options have not been constructed yet, so the new overrides will be applied on loading
+                swap.run();
+                return;
+            }
+            Minecraft.getInstance().execute(() -> applyOptions(swap));
+        });
+        ToadSync.OBJECTS.setClientFrameTimeHook(() -> {
+            // downloads are not throttled on menus, or when the game is paused
+            var minecraft = Minecraft.getInstance();
+            if (minecraft.level == null || minecraft.isPaused()) {
+                return OptionalDouble.empty();
+            }
+            return OptionalDouble.of(1e3 / Math.max(1, minecraft.getFps()));
+        });
+        ToadSync.OBJECTS.setAssetsReloadHook(AssetsReloader::tryReload);
         ToadSync.OBJECTS.setAssetsToastHook(() -> {
             var loaded = Minecraft.getInstance().player != null;
             if (loaded) {
@@ -45,4 +77,62 @@ public final class ToadClientEventHandler {
             return Optional.empty();
         });
     }
+
+    private static void applyOptions(Runnable swap) {
+        var minecraft = Minecraft.getInstance();
+        // noinspection ConstantValue
+        if (minecraft.options == null) {
+            // options have not been constructed yet, so the new overrides will be applied on loading
+            swap.run();
+            return;
+        }
+        // save live options first, so that the ones changed by the player are ignored as usual
+        var options = minecraft.options;
+        options.save();
+        swap.run();
+        options.load();
+        var changed = ToadSync.OBJECTS.lastOverriddenOptions();
+        LOGGER.info("Applied {} updated option(s) without restarting: {}", changed.size(), changed);
+        if (changed.isEmpty()) {
+            return;
+        }
+        // only trigger the side effects of the changed options
+        var reloadResources = false;
+        if (changed.contains("lang")) {
+            minecraft.getLanguageManager().setSelected(options.languageCode);
+            reloadResources = true;
+        }
+        if (changed.contains("resourcePacks") || changed.contains("incompatibleResourcePacks")) {
+            options.loadSelectedResourcePacks(minecraft.getResourcePackRepository());
+            reloadResources = true;
+        }
+        if (changed.contains("mipmapLevels")) {
+            minecraft.updateMaxMipLevel(options.mipmapLevels().get());
+            reloadResources = true;
+        }
+        if (reloadResources) {
+            minecraft.reloadResourcePacks();
+        }
+        if (changed.contains("guiScale")) {
+            minecraft.resizeDisplay();
+        }
+        if (changed.contains("enableVsync")) {
+            minecraft.getWindow().updateVsync(options.enableVsync().get());
+        }
+        if (changed.contains("maxFps")) {
+            minecraft.getWindow().setFramerateLimit(options.framerateLimit().get());
+        }
+        if (changed.stream().anyMatch(LEVEL_RENDERER_OPTIONS::contains)) {
+            minecraft.levelRenderer.allChanged();
+        }
+        if (changed.stream().anyMatch(k -> k.startsWith("key_"))) {
+            KeyMapping.resetMapping();
+        }
+        for (var source : SoundSource.values()) {
+            if (changed.contains("soundCategory_" + source.getName())) {
+                minecraft.getSoundManager().updateSourceVolume(source, options.getSoundSourceVolume(source));
+            }
+        }
+        options.save();
+    }
 }
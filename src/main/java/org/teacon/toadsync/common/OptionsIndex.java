@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
+
+/**
+ * The overridden options, whose keys could be looked up by the chars being written without creating strings.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+record OptionsIndex(ImmutableMap<String, String> values, Int2ObjectMap<ImmutableList<String>> keys) {
+    static final OptionsIndex EMPTY = of(Map.of());
+
+    static OptionsIndex of(Map<String, String> values) {
+        // keys are indexed by String#hashCode, so that they could be looked up by chars without creating strings
+        var keys = new Int2ObjectOpenHashMap<ImmutableList<String>>(values.size());
+        for (var key : values.keySet()) {
+            keys.merge(key.hashCode(), ImmutableList.of(key), (a, b) -> ImmutableList.<String>builder()
+                    .addAll(a).addAll(b).build());
+        }
+        return new OptionsIndex(ImmutableMap.copyOf(values), Int2ObjectMaps.unmodifiable(keys));
+    }
+
+    @Nullable String lookup(CharSequence key, int hash) {
+        var candidates = this.keys.get(hash);
+        if (candidates != null) {
+            for (var candidate : candidates) {
+                if (candidate.contentEquals(key)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common;
+
+import com.google.gson.JsonArray;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import net.minecraft.util.GsonHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes options through to the file, and collects the overridden keys whose values have been changed by the
+ * player on the fly. Only the keys are buffered, and values are compared with the overridden ones char by char.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class OptionsSaveFilter extends Writer {
+    static final String TOAD_SYNC_IGNORE = "toadSyncIgnore";
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Writer inner;
+    private final OptionsIndex index;
+    private final JsonArray syncIgnore = new JsonArray();
+    private final StringBuilder key = new StringBuilder();
+    private @Nullable String overriddenKey = null;
+    private @Nullable String overriddenValue = null;
+    private boolean inValue = false, mismatched = false, afterCarriageReturn = false;
+    private int keyHash = 0, valueLength = 0, lineCount = 0;
+
+    OptionsSaveFilter(Writer inner, OptionsIndex index) {
+        this.inner = inner;
+        this.index = index;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        this.accept((char) c);
+        this.inner.write(c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (var i = off; i < off + len; ++i) {
+            this.accept(cbuf[i]);
+        }
+        this.inner.write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (var i = off; i < off + len; ++i) {
+            this.accept(str.charAt(i));
+        }
+        this.inner.write(str, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.inValue || !this.key.isEmpty()) {
+            this.endLine();
+        }
+        this.inner.write(TOAD_SYNC_IGNORE + ":" + GsonHelper.toStableString(this.syncIgnore));
+        this.inner.write(System.lineSeparator());
+        LOGGER.debug("Saving vanilla options.txt ({} entries)", this.lineCount);
+        this.inner.close();
+    }
+
+    private void accept(char c) {
+        if (c == '\n' && this.afterCarriageReturn) {
+            this.afterCarriageReturn = false;
+            return;
+        }
+        this.afterCarriageReturn = c == '\r';
+        if (c == '\n' || c == '\r') {
+            this.endLine();
+        } else if (this.inValue) {
+            var expected = this.overriddenValue;
+            if (expected != null && !this.mismatched) {
+                var index = this.valueLength;
+                this.mismatched = index >= expected.length() || expected.charAt(index) != c;
+            }
+            this.valueLength += 1;
+        } else if (c == ':') {
+            this.inValue = true;
+            this.overriddenKey = this.index.lookup(this.key, this.keyHash);
+            this.overriddenValue = this.overriddenKey == null ? null : this.index.values().get(this.overriddenKey);
+        } else {
+            this.key.append(c);
+            this.keyHash = 31 * this.keyHash + c;
+        }
+    }
+
+    private void endLine() {
+        var expected = this.overriddenValue;
+        if (expected != null && (this.mismatched || this.valueLength != expected.length())) {
+            this.syncIgnore.add(this.overriddenKey);
+        }
+        this.lineCount += 1;
+        this.key.setLength(0);
+        this.overriddenKey = null;
+        this.overriddenValue = null;
+        this.inValue = this.mismatched = false;
+        this.keyHash = this.valueLength = 0;
+    }
+}
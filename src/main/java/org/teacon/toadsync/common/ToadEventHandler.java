@@ -22,41 +22,47 @@ import com.google.common.base.CaseFormat;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.MoreFiles;
 import net.minecraft.FieldsAreNonnullByDefault;
 import net.minecraft.MethodsReturnNonnullByDefault;
-import net.minecraft.Util;
 import net.neoforged.api.distmarker.Dist;
 import net.neoforged.bus.api.EventPriority;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.loading.FMLLoader;
+import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
 import net.neoforged.neoforge.client.event.ClientTickEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.AddPackFindersEvent;
 import net.neoforged.neoforge.event.GameShuttingDownEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.teacon.toadsync.ToadSync;
+import org.teacon.toadsync.common.network.MetaPushPayload;
+import org.teacon.toadsync.common.remote.DownloadScheduler;
 import org.teacon.toadsync.common.remote.MetaEntryRefresher;
 import org.teacon.toadsync.common.remote.MetaValidatableRefresher;
-import org.teacon.toadsync.common.sync.OptionsSyncProvider;
+import org.teacon.toadsync.common.remote.RemoteMeta;
+import org.teacon.toadsync.common.remote.SingleFlightTransfers;
 import org.teacon.toadsync.spi.ToadSyncProvider;
 
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.io.IOException;
 import java.net.http.HttpClient;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
@@ -68,20 +74,27 @@ public final class ToadEventHandler {
         var versionString = FMLLoader.getLoadingModList().getModFileById(ToadSync.ID).versionString();
         var distString = CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_HYPHEN, dist.toString());
         LOGGER.info("ToadSync Version: {} ({} side)", versionString, distString);
-        // get providers (options always at the first)
-        var suppliers = ServiceLoader.load(ToadSyncProvider.class).stream().collect(Collectors.toList());
-        var optionsIndex = Iterables.indexOf(suppliers, p -> p != null && p.type() == OptionsSyncProvider.class);
-        Collections.rotate(suppliers.subList(0, optionsIndex + 1), 1);
+        // get providers, which are loaded in the order of their dependencies
+        var suppliers = ServiceLoader.load(ToadSyncProvider.class).stream().toList();
         // load and check providers
         var artifacts = HashBiMap.<String, Path>create();
         var providers = ImmutableMap.<String, ToadSyncProvider>builderWithExpectedSize(suppliers.size());
         var refreshers = new HashMap<String, MetaEntryRefresher>(suppliers.size());
+        // a dedicated executor of virtual threads, which is shut down together with the refreshers
+        var workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ToadSync-Worker-", 1L).factory());
         var client = HttpClient.newBuilder()
-                .executor(Util.nonCriticalIoPool())
+                .executor(workers)
                 .version(HttpClient.Version.HTTP_2)
                 .followRedirects(HttpClient.Redirect.ALWAYS)
                 .connectTimeout(Duration.ofMillis(300_000L)).build();
+        var scheduler = new DownloadScheduler(ToadSync.OBJECTS.bandwidthGovernor());
+        var transfers = new SingleFlightTransfers();
+        var failures = ToadSync.OBJECTS.failedTransfers();
         var pattern = Pattern.compile("[a-z][a-z0-9_-]*");
+        ToadSync.OBJECTS.readTransportRoots();
+        var localMeta = ToadSync.OBJECTS.readLocalMeta();
+        var localEntries = localMeta.syncEntries();
+        localMeta.startupDeadline().ifPresent(ToadSync.OBJECTS::armStartupGate);
         for (var supplier : suppliers) {
             var provider = supplier.get();
             // check id and ensure uniqueness
@@ -103,27 +116,106 @@ public final class ToadEventHandler {
             }
             artifacts.put(id, file);
             providers.put(id, provider);
-            var hash = (HashCode) null;
+            var dir = ToadSync.CONFIG_DIR;
+            refreshers.put(id, new MetaEntryRefresher(dir, client, scheduler, transfers, failures, provider));
+        }
+        // load providers in the order of dependencies, and start remote address sync after all of them are loaded
+        var loading = load(providers.build(), refreshers, localEntries, workers);
+        ToadSync.OBJECTS.setBootstrapLoading(loading);
+        loading.whenComplete((v, t) -> {
+            if (t != null) {
+                LOGGER.error("Failed to load some of the providers", t);
+            }
+            var refresher = new MetaValidatableRefresher(client, scheduler, failures, refreshers);
+            if (dist.isDedicatedServer()) {
+                // connected clients follow the revisions applied by the dedicated server
+                refresher.setRevisionHook(ToadSync.OBJECTS::pushMeta);
+            }
+            ToadSync.OBJECTS.submitRefresher(refresher);
+        });
+    }
+
+    private static CompletableFuture<Void> load(ImmutableMap<String, ToadSyncProvider> providers,
+                                                Map<String, MetaEntryRefresher> refreshers,
+                                                Map<String, RemoteMeta.Entry> localEntries, Executor executor) {
+        var sorted = sortByDependencies(providers);
+        var loaded = new HashMap<String, CompletableFuture<Void>>(sorted.size());
+        var onThread = new LinkedHashMap<String, CompletableFuture<Void>>(sorted.size());
+        // off-thread providers are loaded as soon as their dependencies are loaded
+        for (var provider : sorted) {
+            var id = provider.id();
+            var dependencies = CompletableFuture.allOf(provider.dependencies().stream()
+                    .map(loaded::get).filter(Objects::nonNull).toArray(CompletableFuture<?>[]::new));
+            if (provider.loadsOffThread()) {
+                var refresher = refreshers.get(id);
+                loaded.put(id, dependencies.thenRunAsync(() -> refresher.load(localEntries.get(id)), executor));
+            } else {
+                loaded.put(id, new CompletableFuture<>());
+                onThread.put(id, dependencies);
+            }
+        }
+        // the others are loaded on the bootstrap thread in the order of dependencies
+        for (var entry : onThread.entrySet()) {
+            var id = entry.getKey();
+            var done = loaded.get(id);
             try {
-                var location = ToadSync.CONFIG_DIR.resolve(file);
-                if (Files.exists(location)) {
-                    hash = MoreFiles.asByteSource(location).hash(Hashing.sha256());
-                    LOGGER.info("Start loading {} ({}) of {} provider ({}) ...", file, hash, id, cls);
-                    provider.load(hash, location);
+                entry.getValue().join();
+                refreshers.get(id).load(localEntries.get(id));
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                throw e;
+            }
+        }
+        // only wait for the providers needed before the game continues starting up
+        for (var provider : sorted) {
+            if (provider.awaitedOnBootstrap()) {
+                loaded.get(provider.id()).join();
+            }
+        }
+        return CompletableFuture.allOf(loaded.values().toArray(CompletableFuture<?>[]::new));
+    }
+
+    private static List<ToadSyncProvider> sortByDependencies(ImmutableMap<String, ToadSyncProvider> providers) {
+        var sorted = new LinkedHashMap<String, ToadSyncProvider>(providers.size());
+        var visiting = new HashSet<String>();
+        for (var provider : providers.values()) {
+            visit(provider, providers, visiting, sorted);
+        }
+        return List.copyOf(sorted.values());
+    }
+
+    private static void visit(ToadSyncProvider provider, ImmutableMap<String, ToadSyncProvider> providers,
+                              Set<String> visiting, Map<String, ToadSyncProvider> sorted) {
+        var id = provider.id();
+        if (!sorted.containsKey(id)) {
+            Preconditions.checkArgument(visiting.add(id), "cyclic dependencies of provider: " + id);
+            // unknown or disabled dependencies are ignored
+            for (var dependency : provider.dependencies()) {
+                var dependencyProvider = providers.get(dependency);
+                if (dependencyProvider != null) {
+                    visit(dependencyProvider, providers, visiting, sorted);
                 }
-            } catch (IOException e) {
-                LOGGER.error("Failed to load {} of {} provider ({})", file, id, cls, e);
             }
-            refreshers.put(id, new MetaEntryRefresher(ToadSync.CONFIG_DIR, client, hash, provider));
+            visiting.remove(id);
+            sorted.put(id, provider);
         }
-        // start remote address sync
-        ToadSync.OBJECTS.submitRefresher(new MetaValidatableRefresher(client, refreshers));
     }
 
     public static void init(IEventBus bus) {
         NeoForge.EVENT_BUS.addListener(ServerTickEvent.Pre.class, ToadSync.OBJECTS::handleServerTick);
         NeoForge.EVENT_BUS.addListener(ClientTickEvent.Pre.class, ToadSync.OBJECTS::handleClientTick);
         NeoForge.EVENT_BUS.addListener(GameShuttingDownEvent.class, ignored -> ToadSync.OBJECTS.close());
+        NeoForge.EVENT_BUS.addListener(PlayerEvent.PlayerLoggedInEvent.class, ToadSync.OBJECTS::handlePlayerLoggedIn);
+        NeoForge.EVENT_BUS.addListener(ClientPlayerNetworkEvent.LoggingOut.class,
+                ToadSync.OBJECTS::handleClientLoggingOut);
         bus.addListener(EventPriority.LOWEST, AddPackFindersEvent.class, ToadSync.OBJECTS::handleAddPackFinders);
+        bus.addListener(RegisterPayloadHandlersEvent.class, ToadEventHandler::registerPayloads);
+    }
+
+    private static void registerPayloads(RegisterPayloadHandlersEvent event) {
+        // the payload is optional, so that players without ToadSync could still join the server
+        var registrar = event.registrar(ToadSync.ID).versioned("1").optional();
+        registrar.playToClient(MetaPushPayload.TYPE, MetaPushPayload.STREAM_CODEC, ToadSync.OBJECTS::handleMetaPush);
     }
 }
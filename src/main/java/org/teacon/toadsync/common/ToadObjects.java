@@ -28,11 +28,13 @@ import com.electronwill.nightconfig.core.io.*;
 import com.electronwill.nightconfig.toml.TomlParser;
 import com.electronwill.nightconfig.toml.TomlWriter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.Runnables;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
 import net.minecraft.ChatFormatting;
 import net.minecraft.DetectedVersion;
 import net.minecraft.FieldsAreNonnullByDefault;
@@ -43,6 +45,7 @@ import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.packs.FilePackResources;
 import net.minecraft.server.packs.PackLocationInfo;
 import net.minecraft.server.packs.PackSelectionConfig;
@@ -50,26 +53,46 @@ import net.minecraft.server.packs.PackType;
 import net.minecraft.server.packs.repository.Pack;
 import net.minecraft.server.packs.repository.PackSource;
 import net.minecraft.util.GsonHelper;
+import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
 import net.neoforged.neoforge.client.event.ClientTickEvent;
 import net.neoforged.neoforge.event.AddPackFindersEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.event.tick.ServerTickEvent;
-import org.apache.commons.io.input.CharSequenceReader;
+import net.neoforged.neoforge.network.PacketDistributor;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.teacon.toadsync.ToadSync;
+import org.teacon.toadsync.common.network.MetaPushPayload;
+import org.teacon.toadsync.common.remote.BandwidthGovernor;
+import org.teacon.toadsync.common.remote.FailedTransfers;
 import org.teacon.toadsync.common.remote.MetaValidatableRefresher;
+import org.teacon.toadsync.common.remote.RemoteMeta;
+import org.teacon.toadsync.common.remote.Transports;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.temporal.Temporal;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.zip.ZipFile;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
@@ -78,7 +101,6 @@ public final class ToadObjects implements Closeable {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private static final String PACK_PREFIX = ToadSync.ID + "/";
-    private static final String TOAD_SYNC_IGNORE = "toadSyncIgnore";
 
     private static final ConfigFormat<CommentedConfig> TOML_FORMAT = new TomlFormat();
     private static final PackSource PACK_SOURCE = PackSource.create(ToadObjects::decorateDescription, true);
@@ -88,12 +110,23 @@ public final class ToadObjects implements Closeable {
     private final TitleOverride titleOverride = new TitleOverride();
     private final OptionsOverride optionsOverride = new OptionsOverride();
     private final GamePacksOverride gamePacksOverride = new GamePacksOverride();
+    private final BandwidthGovernor bandwidthGovernor = new BandwidthGovernor();
+    private final FailedTransfers failedTransfers = new FailedTransfers();
+    private Supplier<OptionalDouble> clientFrameTimeHook = OptionalDouble::empty;
+    private final CompletableFuture<Void> startupSync = new CompletableFuture<>();
+    private volatile CompletableFuture<Void> bootstrapLoading = CompletableFuture.completedFuture(null);
+    private volatile long startupDeadlineNanos = 0L;
+    private volatile boolean startupGateArmed = false;
+    private volatile @Nullable MetaPushPayload metaPush;
+    private final AtomicBoolean metaPushPending = new AtomicBoolean();
 
     public void submitRefresher(MetaValidatableRefresher refresher) {
         if (this.refresher != null) {
             throw new IllegalStateException("Refresher added twice");
         }
         this.refresher = refresher;
+        refresher.setCommitHook(this::commitGeneration);
+        refresher.firstSync().whenComplete((v, t) -> this.startupSync.complete(null));
         refresher.submit(FileConfig
                 .builder(ToadSync.CONFIG, TOML_FORMAT)
                 .writingMode(WritingMode.REPLACE_ATOMIC)
@@ -101,6 +134,113 @@ public final class ToadObjects implements Closeable {
                 .preserveInsertionOrder().async().build());
     }
 
+    private CompletableFuture<?> commitGeneration(Supplier<CompletableFuture<?>> commit) {
+        // pack reloads are held until all the providers of a generation have applied, so they are reloaded once
+        this.gamePacksOverride.beginCommit();
+        try {
+            return commit.get().whenComplete((v, t) -> this.gamePacksOverride.endCommit());
+        } catch (RuntimeException e) {
+            this.gamePacksOverride.endCommit();
+            throw e;
+        }
+    }
+
+    public void setBootstrapLoading(CompletableFuture<Void> loading) {
+        this.bootstrapLoading = loading;
+    }
+
+    private void awaitBootstrapLoading() {
+        // providers which are not awaited on bootstrap are still loaded before packs are discovered
+        try {
+            this.bootstrapLoading.join();
+        } catch (CompletionException | CancellationException e) {
+            LOGGER.debug("Continue discovering packs since some of the providers failed to load", e);
+        }
+    }
+
+    public void armStartupGate(Duration deadline) {
+        this.startupDeadlineNanos = System.nanoTime() + deadline.toNanos();
+        this.startupGateArmed = true;
+        LOGGER.info("Startup will wait for the first remote sync for at most {} ms", deadline.toMillis());
+    }
+
+    public void awaitStartupGate() {
+        if (!this.startupGateArmed) {
+            return;
+        }
+        // the gate is only passed once, after which the downloads are left in the background
+        this.startupGateArmed = false;
+        var remaining = Math.max(0L, this.startupDeadlineNanos - System.nanoTime());
+        try {
+            this.startupSync.get(remaining, TimeUnit.NANOSECONDS);
+            LOGGER.info("The first remote sync has been applied before startup continues");
+        } catch (TimeoutException e) {
+            LOGGER.warn("Startup deadline reached, continue with the artifacts which have been verified");
+        } catch (ExecutionException e) {
+            LOGGER.warn("Failed to wait for the first remote sync", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void pushMeta(RemoteMeta meta) {
+        var remote = meta.remote();
+        if (remote.isPresent()) {
+            var hashes = ImmutableMap.copyOf(Maps.transformValues(meta.syncEntries(), e -> e.hash().toString()));
+            this.metaPush = new MetaPushPayload(remote.get().toString(), hashes);
+            this.metaPushPending.set(true);
+        }
+    }
+
+    public void handleMetaPush(MetaPushPayload payload, IPayloadContext context) {
+        if (this.refresher != null) {
+            this.refresher.handlePush(payload.remote(), payload.hashes());
+        }
+    }
+
+    public void handleClientLoggingOut(ClientPlayerNetworkEvent.LoggingOut event) {
+        Objects.requireNonNull(event);
+        if (this.refresher != null) {
+            this.refresher.handlePushDisconnect();
+        }
+    }
+
+    public void handlePlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        var push = this.metaPush;
+        if (push != null && event.getEntity() instanceof ServerPlayer player) {
+            sendMetaPush(player, push);
+        }
+    }
+
+    private static void sendMetaPush(ServerPlayer player, MetaPushPayload push) {
+        // players without ToadSync are not able to handle the payload
+        if (player.connection.hasChannel(MetaPushPayload.TYPE)) {
+            PacketDistributor.sendToPlayer(player, push);
+        }
+    }
+
+    public void readTransportRoots() {
+        // the roots are read from a file of their own, since the local config is replaced by the remote one
+        var builder = FileConfig.builder(ToadSync.TRANSPORTS, TOML_FORMAT);
+        try (var conf = builder.onFileNotFound(FileNotFoundAction.READ_NOTHING).build()) {
+            conf.load();
+            Transports.allowRoots(Transports.readRoots(conf));
+        } catch (ParsingException e) {
+            LOGGER.warn("Failed to read the roots of transports", e);
+        }
+    }
+
+    public RemoteMeta readLocalMeta() {
+        var builder = FileConfig.builder(ToadSync.CONFIG, TOML_FORMAT);
+        try (var conf = builder.onFileNotFound(FileNotFoundAction.READ_NOTHING).build()) {
+            conf.load();
+            return MetaValidatableRefresher.readSaved(RemoteMeta.of().read(conf), ToadSync.CONFIG);
+        } catch (ParsingException e) {
+            LOGGER.warn("Failed to read the local meta", e);
+            return RemoteMeta.of();
+        }
+    }
+
     public void readTitle(Path path) throws IOException {
         try (var conf = FileConfig.builder(path, TOML_FORMAT).onFileNotFound(FileNotFoundAction.READ_NOTHING).build()) {
             conf.load();
@@ -134,20 +274,45 @@ public final class ToadObjects implements Closeable {
 
     public void readOptions(HashCode hash, Path path) throws IOException {
         this.markOptionsUpdated(hash);
+        this.optionsOverride.optionsIndex = OptionsIndex.of(parseOptions(path));
+    }
+
+    public void updateOptions(HashCode hash, Path path) throws IOException {
+        var index = OptionsIndex.of(parseOptions(path));
+        this.markOptionsUpdated(hash);
+        // the hook persists the live options before the swap, and reloads them after the swap
+        this.optionsOverride.applyHook.accept(() -> {
+            this.optionsOverride.optionsIndex = index;
+            this.optionsOverride.loadedHash = hash;
+            this.optionsOverride.brandResetHook.run();
+        });
+    }
+
+    public void setOptionsApplyHook(Consumer<Runnable> hook) {
+        this.optionsOverride.applyHook = hook;
+    }
+
+    public Set<String> lastOverriddenOptions() {
+        return this.optionsOverride.lastOverridden;
+    }
+
+    private static LinkedHashMap<String, String> parseOptions(Path path) throws IOException {
+        var optionsData = new LinkedHashMap<String, String>();
         try (var reader = new LineNumberReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
             for (var line = reader.readLine(); line != null; line = reader.readLine()) {
                 try {
                     var split = line.split(":", 2);
-                    if (split[0].equals(TOAD_SYNC_IGNORE)) {
-                        throw new IllegalArgumentException("Invalid key: " + TOAD_SYNC_IGNORE);
+                    if (split[0].equals(OptionsSaveFilter.TOAD_SYNC_IGNORE)) {
+                        throw new IllegalArgumentException("Invalid key: " + OptionsSaveFilter.TOAD_SYNC_IGNORE);
                     }
-                    this.optionsOverride.optionsData.putString(split[0], split[1]);
+                    optionsData.put(split[0], split[1]);
                 } catch (Exception e) {
                     var lineNumber = reader.getLineNumber();
                     throw new IOException("Failed to parse options (line " + lineNumber + ") on loading", e);
                 }
             }
         }
+        return optionsData;
     }
 
     public void markOptionsUpdated(HashCode hash) {
@@ -172,91 +337,124 @@ public final class ToadObjects implements Closeable {
     public void afterOptionsLoad(CompoundTag options, CompoundTag toOverride) throws JsonParseException {
         LOGGER.debug("Loading vanilla options.txt ({} entries)", options.size());
         var syncIgnoreSet = new LinkedHashSet<String>();
-        if (options.contains(TOAD_SYNC_IGNORE, Tag.TAG_STRING)) {
-            var syncIgnore = GsonHelper.parseArray(options.getString(TOAD_SYNC_IGNORE));
+        if (options.contains(OptionsSaveFilter.TOAD_SYNC_IGNORE, Tag.TAG_STRING)) {
+            var syncIgnore = GsonHelper.parseArray(options.getString(OptionsSaveFilter.TOAD_SYNC_IGNORE));
             for (var key : syncIgnore) {
                 if (!key.isJsonPrimitive()) {
-                    throw new JsonParseException("Invalid element of value: " + TOAD_SYNC_IGNORE);
+                    throw new JsonParseException("Invalid element of value: " + OptionsSaveFilter.TOAD_SYNC_IGNORE);
                 }
                 syncIgnoreSet.add(key.getAsString());
             }
         }
-        for (var key : this.optionsOverride.optionsData.getAllKeys()) {
-            var oldTag = options.get(key);
-            var newTag = StringTag.valueOf(this.optionsOverride.optionsData.getString(key));
-            if (!newTag.equals(oldTag) && !syncIgnoreSet.contains(key)) {
-                toOverride.put(key, newTag);
+        for (var entry : this.optionsOverride.optionsIndex.values().entrySet()) {
+            var oldTag = options.get(entry.getKey());
+            var newTag = StringTag.valueOf(entry.getValue());
+            if (!newTag.equals(oldTag) && !syncIgnoreSet.contains(entry.getKey())) {
+                toOverride.put(entry.getKey(), newTag);
             }
         }
+        this.optionsOverride.lastOverridden = ImmutableSet.copyOf(toOverride.getAllKeys());
         this.optionsOverride.overridden = true;
     }
 
-    public void beforeOptionsSave(StringBuilder options) throws IOException {
-        var syncIgnore = new JsonArray();
-        try (var reader = new LineNumberReader(new CharSequenceReader(options))) {
-            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
-                try {
-                    var split = line.split(":", 2);
-                    var overridable = this.optionsOverride.optionsData.contains(split[0], Tag.TAG_STRING);
-                    var ignore = overridable && !this.optionsOverride.optionsData.getString(split[0]).equals(split[1]);
-                    if (ignore) {
-                        syncIgnore.add(new JsonPrimitive(split[0]));
-                    }
-                } catch (Exception e) {
-                    var lineNumber = reader.getLineNumber();
-                    throw new IOException("Failed to parse options (line " + lineNumber + ") on saving", e);
-                }
+    public Writer beforeOptionsSave(Writer options) {
+        return new OptionsSaveFilter(options, this.optionsOverride.optionsIndex);
+    }
+
+    public void readAssets(List<Path> paths) throws IOException {
+        this.readPacks(PackType.CLIENT_RESOURCES, "assets", paths);
+    }
+
+    public void setAssetsToastHook(Supplier<Optional<Runnable>> hook) {
+        this.gamePacksOverride.assetsToastHook = hook;
+    }
+
+    public void setAssetsReloadHook(Predicate<Set<String>> hook) {
+        this.gamePacksOverride.assetsReloadHook = hook;
+    }
+
+    public void readData(List<Path> paths) throws IOException {
+        this.readPacks(PackType.SERVER_DATA, "data", paths);
+    }
+
+    private void readPacks(PackType type, String name, List<Path> paths) throws IOException {
+        var newPacks = ImmutableList.<Pack>builderWithExpectedSize(paths.size());
+        var newIndexes = ImmutableMap.<String, ImmutableMap<String, Long>>builderWithExpectedSize(paths.size());
+        for (var path : paths) {
+            var id = PACK_PREFIX + path.getFileName();
+            var info = new PackLocationInfo(id, Component.literal("ToadSync"), PACK_SOURCE, Optional.empty());
+            var supplier = new FilePackResources.FileResourcesSupplier(path);
+            var version = DetectedVersion.BUILT_IN.getPackVersion(type);
+            var meta = Pack.readPackMetadata(info, supplier, version);
+            if (meta == null) {
+                this.gamePacksOverride.publish(type, ImmutableList.of(), ImmutableMap.of());
+                throw new IOException("Invalid pack metadata of " + name + " in " + path);
             }
-            options.append(TOAD_SYNC_IGNORE + ":");
-            options.append(GsonHelper.toStableString(syncIgnore));
-            options.append(System.lineSeparator());
-            LOGGER.debug("Saving vanilla options.txt ({} entries)", reader.getLineNumber());
-        }
-    }
-
-    public void readAssets(Path path) throws IOException {
-        var id = PACK_PREFIX + path.getFileName();
-        var info = new PackLocationInfo(id, Component.literal("ToadSync"), PACK_SOURCE, Optional.empty());
-        var supplier = new FilePackResources.FileResourcesSupplier(path);
-        var version = DetectedVersion.BUILT_IN.getPackVersion(PackType.CLIENT_RESOURCES);
-        var meta = Pack.readPackMetadata(info, supplier, version);
-        if (meta == null) {
-            var oldPack = this.gamePacksOverride.packs.remove(PackType.CLIENT_RESOURCES);
-            if (oldPack != null) {
-                this.gamePacksOverride.needToReload.add(PackType.CLIENT_RESOURCES);
+            newPacks.add(new Pack(info, supplier, meta, PACK_SELECTION));
+            if (type == PackType.CLIENT_RESOURCES) {
+                newIndexes.put(id, indexPack(path));
             }
-            throw new IOException("Invalid pack metadata of assets in " + path);
         }
-        var newPack = new Pack(info, supplier, meta, PACK_SELECTION);
-        this.gamePacksOverride.needToReload.add(PackType.CLIENT_RESOURCES);
-        this.gamePacksOverride.packs.put(PackType.CLIENT_RESOURCES, newPack);
+        this.gamePacksOverride.publish(type, newPacks.build(), newIndexes.buildKeepingLast());
     }
 
-    public void setAssetsToastHook(Supplier<Optional<Runnable>> hook) {
-        this.gamePacksOverride.assetsToastHook = hook;
+    private static ImmutableSet<String> changedAssets(PackSet oldSet, PackSet newSet) {
+        var changed = ImmutableSet.<String>builder();
+        var oldIndexes = oldSet.indexes();
+        var newIndexes = newSet.indexes();
+        // the order of packs decides which resources are overridden, so treat it as a change of pack metadata
+        if (!oldIndexes.keySet().asList().equals(newIndexes.keySet().asList())) {
+            changed.add("pack.mcmeta");
+        }
+        for (var id : Sets.union(oldIndexes.keySet(), newIndexes.keySet())) {
+            var oldIndex = oldIndexes.getOrDefault(id, ImmutableMap.of());
+            var newIndex = newIndexes.getOrDefault(id, ImmutableMap.of());
+            for (var entry : Sets.union(oldIndex.keySet(), newIndex.keySet())) {
+                if (!Objects.equals(oldIndex.get(entry), newIndex.get(entry))) {
+                    changed.add(entry);
+                }
+            }
+        }
+        return changed.build();
     }
 
-    public void readData(Path path) throws IOException {
-        var id = PACK_PREFIX + path.getFileName();
-        var info = new PackLocationInfo(id, Component.literal("ToadSync"), PACK_SOURCE, Optional.empty());
-        var supplier = new FilePackResources.FileResourcesSupplier(path);
-        var version = DetectedVersion.BUILT_IN.getPackVersion(PackType.SERVER_DATA);
-        var meta = Pack.readPackMetadata(info, supplier, version);
-        if (meta == null) {
-            var oldPack = this.gamePacksOverride.packs.remove(PackType.SERVER_DATA);
-            if (oldPack != null) {
-                this.gamePacksOverride.needToReload.add(PackType.SERVER_DATA);
+    private static ImmutableMap<String, Long> indexPack(Path path) throws IOException {
+        // only the central directory is read, where the CRC-32 of every entry is recorded
+        try (var zip = new ZipFile(path.toFile())) {
+            var index = ImmutableMap.<String, Long>builderWithExpectedSize(zip.size());
+            for (var entries = zip.entries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    index.put(entry.getName(), entry.getCrc());
+                }
             }
-            throw new IOException("Invalid pack metadata of data in " + path);
+            return index.buildKeepingLast();
         }
-        var newPack = new Pack(info, supplier, meta, PACK_SELECTION);
-        this.gamePacksOverride.needToReload.add(PackType.SERVER_DATA);
-        this.gamePacksOverride.packs.put(PackType.SERVER_DATA, newPack);
+    }
+
+    public BandwidthGovernor bandwidthGovernor() {
+        return this.bandwidthGovernor;
+    }
+
+    public FailedTransfers failedTransfers() {
+        return this.failedTransfers;
+    }
+
+    public void setClientFrameTimeHook(Supplier<OptionalDouble> hook) {
+        this.clientFrameTimeHook = hook;
     }
 
     public void handleServerTick(ServerTickEvent.Pre event) {
         Objects.requireNonNull(event);
-        var needReload = this.gamePacksOverride.needToReload.remove(PackType.SERVER_DATA);
+        var idle = event.getServer().getPlayerCount() == 0;
+        this.bandwidthGovernor.updateServer(idle, event.getServer().getAverageTickTimeNanos());
+        var push = this.metaPush;
+        if (push != null && this.metaPushPending.getAndSet(false)) {
+            for (var player : event.getServer().getPlayerList().getPlayers()) {
+                sendMetaPush(player, push);
+            }
+        }
+        var needReload = this.takeReload(PackType.SERVER_DATA);
         if (needReload) {
             var server = event.getServer();
             server.getPackRepository().reload();
@@ -279,20 +477,42 @@ public final class ToadObjects implements Closeable {
 
     public void handleClientTick(ClientTickEvent.Pre event) {
         Objects.requireNonNull(event);
-        var hook = this.gamePacksOverride.assetsToastHook.get();
-        if (hook.isPresent()) {
-            var needReload = this.gamePacksOverride.needToReload.remove(PackType.CLIENT_RESOURCES);
-            if (needReload) {
-                hook.get().run();
+        this.bandwidthGovernor.updateClient(this.clientFrameTimeHook.get());
+        // like takeReload, but the assets are only taken once the reload hook accepts them
+        var pending = this.gamePacksOverride.pendingAssets;
+        if (pending != null) {
+            // the hook reloads only the resources affected by the changed entries when it is safe to do so
+            if (this.gamePacksOverride.assetsReloadHook.test(pending.changed())) {
+                this.gamePacksOverride.markApplied(PackType.CLIENT_RESOURCES, pending.published());
+                this.gamePacksOverride.assetsToastShown = false;
+            } else if (!this.gamePacksOverride.assetsToastShown) {
+                var hook = this.gamePacksOverride.assetsToastHook.get();
+                if (hook.isPresent()) {
+                    hook.get().run();
+                    this.gamePacksOverride.assetsToastShown = true;
+                }
             }
         }
     }
 
+    private boolean takeReload(PackType type) {
+        // a generation being committed is published (and then reloaded) once all its providers have been notified
+        var applied = this.gamePacksOverride.applied(type);
+        var published = this.gamePacksOverride.published(type);
+        if (published.generation() > applied.generation()) {
+            this.gamePacksOverride.markApplied(type, published);
+            return true;
+        }
+        return false;
+    }
+
     public void handleAddPackFinders(AddPackFindersEvent event) {
         event.addRepositorySource(consumer -> {
-            var pack = this.gamePacksOverride.packs.get(event.getPackType());
-            this.gamePacksOverride.needToReload.remove(event.getPackType());
-            Optional.ofNullable(pack).ifPresent(consumer);
+            this.awaitBootstrapLoading();
+            this.awaitStartupGate();
+            var published = this.gamePacksOverride.published(event.getPackType());
+            this.gamePacksOverride.markApplied(event.getPackType(), published);
+            published.packs().forEach(consumer);
         });
     }
 
@@ -328,9 +548,10 @@ public final class ToadObjects implements Closeable {
     @MethodsReturnNonnullByDefault
     @ParametersAreNonnullByDefault
     private static final class TitleOverride {
-        private boolean windowCreated = false;
+        // the title may be loaded on a worker thread while the game window is being created
+        private volatile boolean windowCreated = false;
         private Runnable updateHook = Runnables.doNothing();
-        private UnmodifiableConfig config = Config.inMemory().unmodifiable();
+        private volatile UnmodifiableConfig config = Config.inMemory().unmodifiable();
     }
 
     @FieldsAreNonnullByDefault
@@ -342,16 +563,96 @@ public final class ToadObjects implements Closeable {
         private @Nullable HashCode latestHash;
         public Supplier<String> optionsHintHook = () -> "";
         private Runnable brandResetHook = Runnables.doNothing();
-        private final CompoundTag optionsData = new CompoundTag();
+        private volatile OptionsIndex optionsIndex = OptionsIndex.EMPTY;
+        private ImmutableSet<String> lastOverridden = ImmutableSet.of();
+        private Consumer<Runnable> applyHook = Runnable::run;
     }
 
     @FieldsAreNonnullByDefault
     @MethodsReturnNonnullByDefault
     @ParametersAreNonnullByDefault
     private static class GamePacksOverride {
+        private boolean assetsToastShown = false;
         private Supplier<Optional<Runnable>> assetsToastHook = Optional::empty;
-        private final Map<PackType, Pack> packs = new EnumMap<>(PackType.class);
-        private final Set<PackType> needToReload = EnumSet.noneOf(PackType.class);
+        private Predicate<Set<String>> assetsReloadHook = changed -> false;
+        // snapshots are replaced as a whole, so that ticks and pack finders read them without locks or copies
+        private volatile ImmutableMap<PackType, PackSet> published = ImmutableMap.of();
+        private volatile ImmutableMap<PackType, PackSet> applied = ImmutableMap.of();
+        // the assets changed since the applied snapshot are computed once per snapshot, instead of on every tick
+        private volatile @Nullable AssetsChange pendingAssets;
+        private ImmutableMap<PackType, PackSet> working = ImmutableMap.of();
+        private long generation = 0L;
+        private int committing = 0;
+
+        private PackSet published(PackType type) {
+            return this.published.getOrDefault(type, PackSet.EMPTY);
+        }
+
+        private PackSet applied(PackType type) {
+            return this.applied.getOrDefault(type, PackSet.EMPTY);
+        }
+
+        private synchronized void publish(PackType type, ImmutableList<Pack> packs,
+                                          ImmutableMap<String, ImmutableMap<String, Long>> indexes) {
+            var set = new PackSet(++this.generation, packs, indexes);
+            this.working = with(this.working, type, set);
+            if (this.committing == 0) {
+                this.published = this.working;
+                this.updatePendingAssets();
+            }
+        }
+
+        private synchronized void markApplied(PackType type, PackSet set) {
+            // a reload may observe an older snapshot than the one marked by a concurrent reload
+            if (set.generation() > this.applied(type).generation()) {
+                this.applied = with(this.applied, type, set);
+                this.updatePendingAssets();
+            }
+        }
+
+        private synchronized void beginCommit() {
+            this.committing += 1;
+        }
+
+        private synchronized void endCommit() {
+            this.committing -= 1;
+            if (this.committing == 0) {
+                this.published = this.working;
+                this.updatePendingAssets();
+            }
+        }
+
+        private void updatePendingAssets() {
+            var applied = this.applied(PackType.CLIENT_RESOURCES);
+            var published = this.published(PackType.CLIENT_RESOURCES);
+            if (published.generation() <= applied.generation()) {
+                this.pendingAssets = null;
+                return;
+            }
+            var pending = this.pendingAssets;
+            if (pending == null || pending.applied() != applied || pending.published() != published) {
+                this.pendingAssets = new AssetsChange(applied, published, changedAssets(applied, published));
+            }
+        }
+
+        private static ImmutableMap<PackType, PackSet> with(Map<PackType, PackSet> sets, PackType type, PackSet set) {
+            var builder = ImmutableMap.<PackType, PackSet>builderWithExpectedSize(sets.size() + 1);
+            return builder.putAll(sets).put(type, set).buildKeepingLast();
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private record PackSet(long generation, ImmutableList<Pack> packs,
+                           ImmutableMap<String, ImmutableMap<String, Long>> indexes) {
+        private static final PackSet EMPTY = new PackSet(0L, ImmutableList.of(), ImmutableMap.of());
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private record AssetsChange(PackSet applied, PackSet published, ImmutableSet<String> changed) {
     }
 
     @FieldsAreNonnullByDefault
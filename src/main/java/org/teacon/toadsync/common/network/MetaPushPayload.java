@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.network;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import org.teacon.toadsync.ToadSync;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sent by a dedicated server to the connected clients when a new revision of the remote meta is applied.
+ * <p>
+ * The payload only carries the remote url and the hashes of all the sync entries, keyed by their ids. A client
+ * whose meta is retrieved from the same remote refreshes it at once if any of the hashes differs from its own, and
+ * slows its own polling down while it is connected to the server.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public record MetaPushPayload(String remote, Map<String, String> hashes) implements CustomPacketPayload {
+    public static final Type<MetaPushPayload> TYPE =
+            new Type<>(ResourceLocation.fromNamespaceAndPath(ToadSync.ID, "meta_push"));
+    public static final StreamCodec<ByteBuf, MetaPushPayload> STREAM_CODEC = StreamCodec.composite(
+            ByteBufCodecs.STRING_UTF8, MetaPushPayload::remote,
+            ByteBufCodecs.<ByteBuf, String, String, Map<String, String>>map(LinkedHashMap::new,
+                    ByteBufCodecs.STRING_UTF8, ByteBufCodecs.STRING_UTF8), MetaPushPayload::hashes,
+            MetaPushPayload::new);
+
+    @Override
+    public Type<MetaPushPayload> type() {
+        return TYPE;
+    }
+}
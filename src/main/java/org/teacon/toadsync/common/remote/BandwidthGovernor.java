@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket shared by all the downloads, whose rate adapts to the load of the game.
+ * <p>
+ * The load is derived from the average tick time of the server (unless no player is online) and the
+ * frame time of the client (unless the client is on a menu or paused). Downloads run at the ceiling
+ * rate when the game is idle, and slow down linearly to the floor rate under heavy load.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class BandwidthGovernor {
+    private static final double KIB = 1024.0;
+    private static final double MIN_BURST = 64.0 * KIB;
+    private static final double UNLIMITED_REFERENCE = 32.0 * KIB * KIB;
+    private static final double IN_WORLD_BASELINE_LOAD = 0.25;
+    private static final double SERVER_LIGHT_MSPT = 25.0, SERVER_HEAVY_MSPT = 50.0;
+    private static final double CLIENT_LIGHT_FRAME_TIME = 1e3 / 60.0, CLIENT_HEAVY_FRAME_TIME = 1e3 / 20.0;
+    private static final long SIGNAL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5L);
+
+    private volatile RemoteMeta.BandwidthLimits limits = RemoteMeta.BandwidthLimits.DEFAULT;
+    private volatile double serverLoad = 0.0, clientLoad = 0.0;
+    private volatile long serverUpdateNanos = 0L, clientUpdateNanos = 0L;
+
+    private double tokens = 0.0;
+    private long refillNanos = System.nanoTime();
+
+    public void limit(RemoteMeta.BandwidthLimits limits) {
+        this.limits = limits;
+    }
+
+    public void updateServer(boolean idle, long averageTickNanos) {
+        var mspt = averageTickNanos / 1e6;
+        this.serverLoad = idle ? 0.0 : ratio(mspt, SERVER_LIGHT_MSPT, SERVER_HEAVY_MSPT);
+        this.serverUpdateNanos = System.nanoTime();
+    }
+
+    public void updateClient(OptionalDouble inWorldFrameTimeMillis) {
+        var frameTime = inWorldFrameTimeMillis.orElse(Double.NaN);
+        var frameLoad = ratio(frameTime, CLIENT_LIGHT_FRAME_TIME, CLIENT_HEAVY_FRAME_TIME);
+        this.clientLoad = inWorldFrameTimeMillis.isEmpty() ? 0.0 : Math.max(IN_WORLD_BASELINE_LOAD, frameLoad);
+        this.clientUpdateNanos = System.nanoTime();
+    }
+
+    public double load() {
+        var now = System.nanoTime();
+        var server = now - this.serverUpdateNanos < SIGNAL_TIMEOUT_NANOS ? this.serverLoad : 0.0;
+        var client = now - this.clientUpdateNanos < SIGNAL_TIMEOUT_NANOS ? this.clientLoad : 0.0;
+        return Math.max(server, client);
+    }
+
+    public double rate() {
+        var load = this.load();
+        var limits = this.limits;
+        var floor = limits.floor() * KIB;
+        var unlimited = limits.ceiling() == 0;
+        if (load <= 0.0) {
+            return unlimited ? Double.POSITIVE_INFINITY : limits.ceiling() * KIB;
+        }
+        var ceiling = unlimited ? Math.max(floor, UNLIMITED_REFERENCE) : limits.ceiling() * KIB;
+        return floor + (ceiling - floor) * (1.0 - load);
+    }
+
+    public long acquire(long bytes) {
+        var rate = this.rate();
+        synchronized (this) {
+            var now = System.nanoTime();
+            var elapsed = now - this.refillNanos;
+            this.refillNanos = now;
+            if (Double.isInfinite(rate)) {
+                this.tokens = 0.0;
+                return 0L;
+            }
+            var burst = Math.max(rate / 4.0, MIN_BURST);
+            this.tokens = Math.min(burst, this.tokens + elapsed * rate / 1e9) - bytes;
+            return this.tokens >= 0.0 ? 0L : (long) Math.ceil(-this.tokens / rate * 1e9);
+        }
+    }
+
+    private static double ratio(double value, double light, double heavy) {
+        return Double.isNaN(value) ? 0.0 : Math.clamp((value - light) / (heavy - light), 0.0, 1.0);
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * BLAKE3 (unkeyed, 256-bit output) as a Guava {@link HashFunction}.
+ * <p>
+ * {@link #newHasher()} is the incremental hasher used while streaming downloads. {@link #hashFile(Path)}
+ * splits the tree at subtree boundaries and hashes the subtrees of large local files in parallel.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class Blake3HashFunction implements HashFunction {
+    static final Blake3HashFunction INSTANCE = new Blake3HashFunction();
+
+    private static final int OUT_LEN = 32;
+    private static final int BLOCK_LEN = 64;
+    private static final int CHUNK_LEN = 1024;
+    private static final int PARALLEL_LEAF_LEN = 1 << 20;
+
+    private static final int CHUNK_START = 1;
+    private static final int CHUNK_END = 2;
+    private static final int PARENT = 4;
+    private static final int ROOT = 8;
+
+    private static final int[] IV = {
+            0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19};
+
+    private Blake3HashFunction() {
+        // singleton
+    }
+
+    public HashCode hashFile(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size <= PARALLEL_LEAF_LEN) {
+                var bytes = new byte[Math.toIntExact(size)];
+                readFully(channel, bytes, 0L);
+                return HashCode.fromBytes(subtree(bytes, 0, bytes.length, 0L).rootBytes());
+            }
+            var root = ForkJoinPool.commonPool().invoke(new SubtreeTask(channel, 0L, size, 0L));
+            return HashCode.fromBytes(root.rootBytes());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new Blake3Hasher();
+    }
+
+    @Override
+    public Hasher newHasher(int expectedInputSize) {
+        return new Blake3Hasher();
+    }
+
+    @Override
+    public HashCode hashInt(int input) {
+        return this.newHasher().putInt(input).hash();
+    }
+
+    @Override
+    public HashCode hashLong(long input) {
+        return this.newHasher().putLong(input).hash();
+    }
+
+    @Override
+    public HashCode hashBytes(byte[] input) {
+        return this.hashBytes(input, 0, input.length);
+    }
+
+    @Override
+    public HashCode hashBytes(byte[] input, int off, int len) {
+        return HashCode.fromBytes(subtree(input, off, len, 0L).rootBytes());
+    }
+
+    @Override
+    public HashCode hashBytes(ByteBuffer input) {
+        return this.newHasher().putBytes(input).hash();
+    }
+
+    @Override
+    public HashCode hashUnencodedChars(CharSequence input) {
+        return this.newHasher().putUnencodedChars(input).hash();
+    }
+
+    @Override
+    public HashCode hashString(CharSequence input, Charset charset) {
+        return this.newHasher().putString(input, charset).hash();
+    }
+
+    @Override
+    public <T> HashCode hashObject(T instance, Funnel<? super T> funnel) {
+        return this.newHasher().putObject(instance, funnel).hash();
+    }
+
+    @Override
+    public int bits() {
+        return OUT_LEN * Byte.SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return "Hashing.blake3()";
+    }
+
+    private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        var buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static Output subtree(byte[] input, int off, int len, long chunkCounter) {
+        if (len <= CHUNK_LEN) {
+            var chunk = new ChunkState(chunkCounter);
+            chunk.update(input, off, len);
+            return chunk.output();
+        }
+        var leftLen = Math.toIntExact(leftSubtreeLen(len));
+        var left = subtree(input, off, leftLen, chunkCounter);
+        var right = subtree(input, off + leftLen, len - leftLen, chunkCounter + leftLen / CHUNK_LEN);
+        return parentOutput(left.chainingValue(), right.chainingValue());
+    }
+
+    private static long leftSubtreeLen(long len) {
+        // the left subtree holds the largest power of two chunks that leaves at least one byte on the right
+        return Long.highestOneBit((len - 1) / CHUNK_LEN) * CHUNK_LEN;
+    }
+
+    private static Output parentOutput(int[] leftCv, int[] rightCv) {
+        var blockWords = new int[16];
+        System.arraycopy(leftCv, 0, blockWords, 0, 8);
+        System.arraycopy(rightCv, 0, blockWords, 8, 8);
+        return new Output(IV, blockWords, 0L, BLOCK_LEN, PARENT);
+    }
+
+    private static void compress(int[] cv, int[] m, long counter, int blockLen, int flags, int[] out) {
+        // the state and the message words live in locals rather than arrays so that the rounds stay in registers
+        var v0 = cv[0];
+        var v1 = cv[1];
+        var v2 = cv[2];
+        var v3 = cv[3];
+        var v4 = cv[4];
+        var v5 = cv[5];
+        var v6 = cv[6];
+        var v7 = cv[7];
+        var v8 = IV[0];
+        var v9 = IV[1];
+        var v10 = IV[2];
+        var v11 = IV[3];
+        var v12 = (int) counter;
+        var v13 = (int) (counter >>> 32);
+        var v14 = blockLen;
+        var v15 = flags;
+        var m0 = m[0];
+        var m1 = m[1];
+        var m2 = m[2];
+        var m3 = m[3];
+        var m4 = m[4];
+        var m5 = m[5];
+        var m6 = m[6];
+        var m7 = m[7];
+        var m8 = m[8];
+        var m9 = m[9];
+        var m10 = m[10];
+        var m11 = m[11];
+        var m12 = m[12];
+        var m13 = m[13];
+        var m14 = m[14];
+        var m15 = m[15];
+        for (var r = 0; r < 7; ++r) {
+            // the quarter-rounds on the columns
+            v0 += v4 + m0;
+            v12 = Integer.rotateRight(v12 ^ v0, 16);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 12);
+            v0 += v4 + m1;
+            v12 = Integer.rotateRight(v12 ^ v0, 8);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 7);
+            v1 += v5 + m2;
+            v13 = Integer.rotateRight(v13 ^ v1, 16);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 12);
+            v1 += v5 + m3;
+            v13 = Integer.rotateRight(v13 ^ v1, 8);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 7);
+            v2 += v6 + m4;
+            v14 = Integer.rotateRight(v14 ^ v2, 16);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 12);
+            v2 += v6 + m5;
+            v14 = Integer.rotateRight(v14 ^ v2, 8);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 7);
+            v3 += v7 + m6;
+            v15 = Integer.rotateRight(v15 ^ v3, 16);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 12);
+            v3 += v7 + m7;
+            v15 = Integer.rotateRight(v15 ^ v3, 8);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 7);
+            // the quarter-rounds on the diagonals
+            v0 += v5 + m8;
+            v15 = Integer.rotateRight(v15 ^ v0, 16);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 12);
+            v0 += v5 + m9;
+            v15 = Integer.rotateRight(v15 ^ v0, 8);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 7);
+            v1 += v6 + m10;
+            v12 = Integer.rotateRight(v12 ^ v1, 16);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 12);
+            v1 += v6 + m11;
+            v12 = Integer.rotateRight(v12 ^ v1, 8);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 7);
+            v2 += v7 + m12;
+            v13 = Integer.rotateRight(v13 ^ v2, 16);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 12);
+            v2 += v7 + m13;
+            v13 = Integer.rotateRight(v13 ^ v2, 8);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 7);
+            v3 += v4 + m14;
+            v14 = Integer.rotateRight(v14 ^ v3, 16);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 12);
+            v3 += v4 + m15;
+            v14 = Integer.rotateRight(v14 ^ v3, 8);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 7);
+            // the message permutation {2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8}, one cycle at a time
+            var t0 = m0;
+            m0 = m2;
+            m2 = m3;
+            m3 = m10;
+            m10 = m12;
+            m12 = m9;
+            m9 = m11;
+            m11 = m5;
+            m5 = t0;
+            var t1 = m1;
+            m1 = m6;
+            m6 = m4;
+            m4 = m7;
+            m7 = m13;
+            m13 = m14;
+            m14 = m15;
+            m15 = m8;
+            m8 = t1;
+        }
+        out[0] = v0 ^ v8;
+        out[1] = v1 ^ v9;
+        out[2] = v2 ^ v10;
+        out[3] = v3 ^ v11;
+        out[4] = v4 ^ v12;
+        out[5] = v5 ^ v13;
+        out[6] = v6 ^ v14;
+        out[7] = v7 ^ v15;
+        out[8] = v8 ^ cv[0];
+        out[9] = v9 ^ cv[1];
+        out[10] = v10 ^ cv[2];
+        out[11] = v11 ^ cv[3];
+        out[12] = v12 ^ cv[4];
+        out[13] = v13 ^ cv[5];
+        out[14] = v14 ^ cv[6];
+        out[15] = v15 ^ cv[7];
+    }
+
+    private static void words(byte[] block, int[] words) {
+        for (var i = 0; i < 16; ++i) {
+            var j = i * Integer.BYTES;
+            words[i] = (block[j] & 0xFF) | (block[j + 1] & 0xFF) << 8
+                    | (block[j + 2] & 0xFF) << 16 | (block[j + 3] & 0xFF) << 24;
+        }
+    }
+
+    private record Output(int[] inputCv, int[] blockWords, long counter, int blockLen, int flags) {
+        private int[] chainingValue() {
+            var out = new int[16];
+            compress(this.inputCv, this.blockWords, this.counter, this.blockLen, this.flags, out);
+            return Arrays.copyOf(out, 8);
+        }
+
+        private byte[] rootBytes() {
+            var out = new int[16];
+            compress(this.inputCv, this.blockWords, 0L, this.blockLen, this.flags | ROOT, out);
+            var bytes = ByteBuffer.allocate(OUT_LEN).order(ByteOrder.LITTLE_ENDIAN);
+            for (var i = 0; i < OUT_LEN / Integer.BYTES; ++i) {
+                bytes.putInt(out[i]);
+            }
+            return bytes.array();
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class ChunkState {
+        private final int[] cv = IV.clone();
+        private long chunkCounter;
+        private final byte[] block = new byte[BLOCK_LEN];
+        private final int[] blockWords = new int[16];
+        private final int[] state = new int[16];
+        private int blockLen = 0;
+        private int blocksCompressed = 0;
+
+        private ChunkState(long chunkCounter) {
+            this.chunkCounter = chunkCounter;
+        }
+
+        private void reset(long chunkCounter) {
+            System.arraycopy(IV, 0, this.cv, 0, 8);
+            this.chunkCounter = chunkCounter;
+            this.blockLen = 0;
+            this.blocksCompressed = 0;
+        }
+
+        private int len() {
+            return BLOCK_LEN * this.blocksCompressed + this.blockLen;
+        }
+
+        private int startFlag() {
+            return this.blocksCompressed == 0 ? CHUNK_START : 0;
+        }
+
+        private void update(byte[] input, int off, int len) {
+            while (len > 0) {
+                // the last block is only compressed when more input arrives, since it may need CHUNK_END
+                if (this.blockLen == BLOCK_LEN) {
+                    words(this.block, this.blockWords);
+                    compress(this.cv, this.blockWords, this.chunkCounter, BLOCK_LEN, this.startFlag(), this.state);
+                    System.arraycopy(this.state, 0, this.cv, 0, 8);
+                    this.blocksCompressed += 1;
+                    this.blockLen = 0;
+                }
+                var take = Math.min(BLOCK_LEN - this.blockLen, len);
+                System.arraycopy(input, off, this.block, this.blockLen, take);
+                this.blockLen += take;
+                off += take;
+                len -= take;
+            }
+        }
+
+        private Output output() {
+            var lastBlock = this.block.clone();
+            Arrays.fill(lastBlock, this.blockLen, BLOCK_LEN, (byte) 0);
+            var lastWords = new int[16];
+            words(lastBlock, lastWords);
+            var flags = this.startFlag() | CHUNK_END;
+            return new Output(this.cv.clone(), lastWords, this.chunkCounter, this.blockLen, flags);
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class SubtreeTask extends RecursiveTask<Output> {
+        private final FileChannel channel;
+        private final long off;
+        private final long len;
+        private final long chunkCounter;
+
+        private SubtreeTask(FileChannel channel, long off, long len, long chunkCounter) {
+            this.channel = channel;
+            this.off = off;
+            this.len = len;
+            this.chunkCounter = chunkCounter;
+        }
+
+        @Override
+        protected Output compute() {
+            if (this.len <= PARALLEL_LEAF_LEN) {
+                try {
+                    var bytes = new byte[Math.toIntExact(this.len)];
+                    readFully(this.channel, bytes, this.off);
+                    return subtree(bytes, 0, bytes.length, this.chunkCounter);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            var leftLen = leftSubtreeLen(this.len);
+            var rightCounter = this.chunkCounter + leftLen / CHUNK_LEN;
+            var left = new SubtreeTask(this.channel, this.off, leftLen, this.chunkCounter);
+            var right = new SubtreeTask(this.channel, this.off + leftLen, this.len - leftLen, rightCounter);
+            left.fork();
+            var rightOutput = right.compute();
+            return parentOutput(left.join().chainingValue(), rightOutput.chainingValue());
+        }
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class Blake3Hasher implements Hasher {
+        private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final int[][] cvStack = new int[54][];
+        private final ChunkState chunkState = new ChunkState(0L);
+        private int cvStackLen = 0;
+        private boolean done = false;
+
+        private void addChunkChainingValue(int[] newCv, long totalChunks) {
+            // merge completed subtrees, one for each trailing zero bit of the total chunk count
+            while ((totalChunks & 1L) == 0L) {
+                newCv = parentOutput(this.cvStack[--this.cvStackLen], newCv).chainingValue();
+                totalChunks >>= 1;
+            }
+            this.cvStack[this.cvStackLen++] = newCv;
+        }
+
+        @Override
+        public Hasher putBytes(byte[] bytes, int off, int len) {
+            if (this.done) {
+                throw new IllegalStateException("Cannot re-use a Hasher after calling hash() on it");
+            }
+            while (len > 0) {
+                if (this.chunkState.len() == CHUNK_LEN) {
+                    var chunkCv = this.chunkState.output().chainingValue();
+                    var totalChunks = this.chunkState.chunkCounter + 1L;
+                    this.addChunkChainingValue(chunkCv, totalChunks);
+                    this.chunkState.reset(totalChunks);
+                }
+                var take = Math.min(CHUNK_LEN - this.chunkState.len(), len);
+                this.chunkState.update(bytes, off, take);
+                off += take;
+                len -= take;
+            }
+            return this;
+        }
+
+        @Override
+        public Hasher putBytes(byte[] bytes) {
+            return this.putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public Hasher putBytes(ByteBuffer bytes) {
+            if (bytes.hasArray()) {
+                this.putBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                bytes.position(bytes.limit());
+                return this;
+            }
+            var buffer = new byte[Math.min(bytes.remaining(), CHUNK_LEN)];
+            while (bytes.hasRemaining()) {
+                var take = Math.min(buffer.length, bytes.remaining());
+                bytes.get(buffer, 0, take);
+                this.putBytes(buffer, 0, take);
+            }
+            return this;
+        }
+
+        private Hasher putScratch(int len) {
+            this.putBytes(this.scratch.array(), 0, len);
+            this.scratch.clear();
+            return this;
+        }
+
+        @Override
+        public Hasher putByte(byte b) {
+            return this.putScratch(this.scratch.put(b).position());
+        }
+
+        @Override
+        public Hasher putShort(short s) {
+            return this.putScratch(this.scratch.putShort(s).position());
+        }
+
+        @Override
+        public Hasher putInt(int i) {
+            return this.putScratch(this.scratch.putInt(i).position());
+        }
+
+        @Override
+        public Hasher putLong(long l) {
+            return this.putScratch(this.scratch.putLong(l).position());
+        }
+
+        @Override
+        public Hasher putFloat(float f) {
+            return this.putInt(Float.floatToRawIntBits(f));
+        }
+
+        @Override
+        public Hasher putDouble(double d) {
+            return this.putLong(Double.doubleToRawLongBits(d));
+        }
+
+        @Override
+        public Hasher putBoolean(boolean b) {
+            return this.putByte(b ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        public Hasher putChar(char c) {
+            return this.putScratch(this.scratch.putChar(c).position());
+        }
+
+        @Override
+        public Hasher putUnencodedChars(CharSequence charSequence) {
+            for (var i = 0; i < charSequence.length(); ++i) {
+                this.putChar(charSequence.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Hasher putString(CharSequence charSequence, Charset charset) {
+            return this.putBytes(charSequence.toString().getBytes(charset));
+        }
+
+        @Override
+        public <T> Hasher putObject(T instance, Funnel<? super T> funnel) {
+            funnel.funnel(instance, this);
+            return this;
+        }
+
+        @Override
+        public HashCode hash() {
+            this.done = true;
+            var output = this.chunkState.output();
+            for (var i = this.cvStackLen - 1; i >= 0; --i) {
+                output = parentOutput(this.cvStack[i], output.chainingValue());
+            }
+            return HashCode.fromBytes(output.rootBytes());
+        }
+
+        @Override
+        @Deprecated
+        public int hashCode() {
+            return super.hashCode();
+        }
+    }
+}
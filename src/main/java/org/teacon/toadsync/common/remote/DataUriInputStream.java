@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Decodes the payload of a {@code data:} URI lazily from the URI string.
+ * <p>
+ * Percent-encoded octets are decoded on the fly, and a {@code ;base64} payload (which is decided by the
+ * media type part before the comma) is decoded by a wrapping stream, so that no full-size copy of the
+ * payload is created besides the URI itself.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class DataUriInputStream extends InputStream {
+    private static final String BASE64_SUFFIX = ";base64";
+
+    private final String uri;
+    private final int end;
+    private int position;
+
+    private DataUriInputStream(String uri, int start, int end) {
+        this.uri = uri;
+        this.end = end;
+        this.position = start;
+    }
+
+    public static InputStream open(URI uri) throws IOException {
+        if (!"data".equals(uri.getScheme())) {
+            throw new IOException("Invalid URI scheme " + uri.getScheme());
+        }
+        var raw = uri.toString();
+        var fragment = uri.getRawFragment();
+        var end = fragment == null ? raw.length() : raw.length() - fragment.length() - 1;
+        var comma = raw.indexOf(',', "data:".length());
+        if (comma < 0 || comma >= end) {
+            throw new IOException("Invalid data URI (comma expected): " + raw.substring(0, Math.min(64, end)));
+        }
+        var suffixStart = comma - BASE64_SUFFIX.length();
+        var base64 = suffixStart >= "data:".length()
+                && raw.regionMatches(true, suffixStart, BASE64_SUFFIX, 0, BASE64_SUFFIX.length());
+        var decoded = new DataUriInputStream(raw, comma + 1, end);
+        return base64 ? Base64.getDecoder().wrap(decoded) : decoded;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return this.position < this.end ? this.next() : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (this.position >= this.end) {
+            return -1;
+        }
+        var count = 0;
+        while (count < len && this.position < this.end) {
+            b[off + count++] = (byte) this.next();
+        }
+        return count;
+    }
+
+    @Override
+    public int available() {
+        // every octet takes at least one char, and at most three chars when percent-encoded
+        return (this.end - this.position + 2) / 3;
+    }
+
+    private int next() throws IOException {
+        var c = this.uri.charAt(this.position++);
+        if (c == '%') {
+            var high = this.position < this.end ? Character.digit(this.uri.charAt(this.position++), 16) : -1;
+            var low = this.position < this.end ? Character.digit(this.uri.charAt(this.position++), 16) : -1;
+            if (high < 0 || low < 0) {
+                throw new IOException("Invalid percent-encoded octet in data URI at " + (this.position - 3));
+            }
+            return high << 4 | low;
+        }
+        if (c > 0xFF) {
+            throw new IOException("Invalid char in data URI at " + (this.position - 1) + ": " + c);
+        }
+        return c; // latin-1 for char-to-byte mapping
+    }
+}
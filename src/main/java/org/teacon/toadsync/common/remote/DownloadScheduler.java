@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Schedules the transfers of all the providers.
+ * <p>
+ * Waiting transfers of higher priorities are started first. The number of running transfers is bounded
+ * both globally and per host (which is also the number of concurrent HTTP/2 streams of a connection).
+ * Among the waiting transfers of the same priority, the provider with the fewest running transfers is
+ * served first, so that a provider with many files could not occupy all the streams of a host.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class DownloadScheduler {
+    private final BandwidthGovernor governor;
+    private final List<Job<?>> waiting = new ArrayList<>();
+    private final Multiset<String> runningHosts = HashMultiset.create();
+    private final Multiset<String> runningOwners = HashMultiset.create();
+    private RemoteMeta.DownloadLimits limits = RemoteMeta.DownloadLimits.DEFAULT;
+    private long sequence = 0L;
+
+    public DownloadScheduler(BandwidthGovernor governor) {
+        this.governor = governor;
+    }
+
+    public BandwidthGovernor governor() {
+        return this.governor;
+    }
+
+    public void limit(RemoteMeta.DownloadLimits limits) {
+        synchronized (this) {
+            this.limits = limits;
+        }
+        this.dispatch();
+    }
+
+    public <T> CompletableFuture<T> submit(int priority, String owner, URI uri, Supplier<CompletableFuture<T>> task) {
+        var result = new CompletableFuture<T>();
+        var host = Objects.requireNonNullElse(uri.getAuthority(), "");
+        synchronized (this) {
+            this.waiting.add(new Job<>(priority, owner, host, this.sequence++, task, result));
+        }
+        this.dispatch();
+        return result;
+    }
+
+    private void dispatch() {
+        var started = new ArrayList<Job<?>>();
+        synchronized (this) {
+            // cancelled jobs are dropped without starting them
+            this.waiting.removeIf(job -> job.result().isDone());
+            while (this.runningHosts.size() < this.limits.maxConcurrency()) {
+                var next = this.waiting.stream()
+                        .filter(job -> this.runningHosts.count(job.host()) < this.limits.maxConcurrencyPerHost())
+                        .min(Comparator.<Job<?>>comparingInt(job -> -job.priority())
+                                .thenComparingInt(job -> this.runningOwners.count(job.owner()))
+                                .thenComparingLong(Job::sequence));
+                if (next.isEmpty()) {
+                    break;
+                }
+                var job = next.get();
+                this.waiting.remove(job);
+                this.runningHosts.add(job.host());
+                this.runningOwners.add(job.owner());
+                started.add(job);
+            }
+        }
+        // start transfers outside the lock since they may complete synchronously
+        for (var job : started) {
+            job.start().whenComplete((r, t) -> {
+                synchronized (this) {
+                    this.runningHosts.remove(job.host());
+                    this.runningOwners.remove(job.owner());
+                }
+                this.dispatch();
+            });
+        }
+    }
+
+    private record Job<T>(int priority, String owner, String host, long sequence,
+                          Supplier<CompletableFuture<T>> task, CompletableFuture<T> result) {
+        private CompletableFuture<?> start() {
+            var pending = (CompletableFuture<T>) null;
+            try {
+                pending = this.task.get();
+            } catch (RuntimeException e) {
+                pending = CompletableFuture.failedFuture(e);
+            }
+            var started = pending;
+            this.result.whenComplete((r, t) -> {
+                if (this.result.isCancelled()) {
+                    started.cancel(true);
+                }
+            });
+            return started.whenComplete((r, t) -> {
+                if (t != null) {
+                    this.result.completeExceptionally(t);
+                } else if (!this.result.complete(r) && r instanceof Closeable closeable) {
+                    // the result has been cancelled, so nobody else would release the resource
+                    try {
+                        closeable.close();
+                    } catch (IOException ignored) {
+                        // the resource would be released on the next start in the worst case
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the transfers which have failed recently, so that a broken origin is not downloaded again on every poll.
+ * <p>
+ * Failures are keyed by the file link and the expected hash. A failed transfer is not retried until its backoff
+ * elapses, which doubles on each consecutive failure up to an hour. If the rejected response had validators, the
+ * retry is a conditional request, which is answered by a small {@code 304 Not Modified} response (and counted as
+ * another failure) as long as the origin still serves the same content, such as a stale edge of a CDN.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class FailedTransfers {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30L);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.HOURS.toNanos(1L);
+
+    private final Map<Key, Failure> failures = new ConcurrentHashMap<>();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    public long failureCount() {
+        return this.failureCount.get();
+    }
+
+    public int consecutiveFailures() {
+        return this.failures.values().stream().mapToInt(Failure::count).max().orElse(0);
+    }
+
+    public Optional<Duration> backoff(RemoteMeta.Entry entry) {
+        var failure = this.failures.get(Key.of(entry));
+        var remaining = failure == null ? 0L : failure.retryNanos() - System.nanoTime();
+        return remaining > 0L ? Optional.of(Duration.ofNanos(remaining)) : Optional.empty();
+    }
+
+    public HttpRequest request(RemoteMeta.Entry entry) throws IOException {
+        var request = entry.request();
+        var failure = this.failures.get(Key.of(entry));
+        if (failure == null || failure.etag() == null && failure.lastModified() == null) {
+            return request;
+        }
+        var builder = HttpRequest.newBuilder(request, (name, value) -> true);
+        if (failure.etag() != null) {
+            builder = builder.header("If-None-Match", failure.etag());
+        }
+        if (failure.lastModified() != null) {
+            builder = builder.header("If-Modified-Since", failure.lastModified());
+        }
+        return builder.build();
+    }
+
+    public <T> CompletableFuture<T> track(RemoteMeta.Entry entry, CompletableFuture<T> pending) {
+        var key = Key.of(entry);
+        // the pending future itself is returned, so that cancelling it still aborts the transfer
+        pending.whenComplete((r, t) -> {
+            if (t == null) {
+                if (this.failures.remove(key) != null) {
+                    LOGGER.info("Transfer of {} recovered from previous failures", key.file());
+                }
+                return;
+            }
+            var cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (!(cause instanceof CancellationException)) {
+                var failure = this.failures.compute(key, (k, old) -> Failure.next(old, cause));
+                var backoff = TimeUnit.NANOSECONDS.toSeconds(failure.retryNanos() - System.nanoTime());
+                LOGGER.warn("Transfer of {} failed {} time(s) in a row ({} in total), retry in {} seconds",
+                        key.file(), failure.count(), this.failureCount.incrementAndGet(), backoff);
+            }
+        });
+        return pending;
+    }
+
+    private record Key(URI file, HashFormat format, HashCode hash) {
+        private static Key of(RemoteMeta.Entry entry) {
+            return new Key(entry.file(), entry.hashFormat(), entry.hash());
+        }
+    }
+
+    private record Failure(int count, long retryNanos, @Nullable String etag, @Nullable String lastModified) {
+        private static Failure next(@Nullable Failure old, Throwable cause) {
+            var count = old == null ? 1 : old.count + 1;
+            var backoff = Math.min(MAX_BACKOFF_NANOS, MIN_BACKOFF_NANOS << Math.min(count - 1, 16));
+            var retryNanos = System.nanoTime() + backoff;
+            return switch (cause) {
+                // the same response is still served, which is revalidated by the same validators next time
+                case RejectedResponseException e when e.notModified() && old != null ->
+                        new Failure(count, retryNanos, old.etag, old.lastModified);
+                case RejectedResponseException e -> new Failure(count, retryNanos, e.etag(), e.lastModified());
+                default -> new Failure(count, retryNanos, null, null);
+            };
+        }
+    }
+}
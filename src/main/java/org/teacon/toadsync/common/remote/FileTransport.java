@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.teacon.toadsync.spi.ToadSyncTransport;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * The built-in transport of {@code file} links, such as artifacts on a local disk or a network share.
+ * <p>
+ * The source is hard linked if it is on the same file system, and copied by {@link FileChannel#transferTo}
+ * otherwise, which lets the kernel copy the bytes (or even share the blocks on file systems supporting reflinks)
+ * without passing them through the heap. Sources are expected to be immutable once they are published, since
+ * a hard link follows later changes of the source.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class FileTransport implements ToadSyncTransport {
+    @Override
+    public Set<String> schemes() {
+        return Set.of("file");
+    }
+
+    @Override
+    public void transfer(URI source, Path target) throws IOException {
+        var path = path(source);
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("Not a regular file: " + source);
+        }
+        try {
+            Files.delete(target);
+            Files.createLink(target, path);
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            // links across file systems are unsupported, which is the common case of network shares
+            Files.deleteIfExists(target);
+        }
+        try (var in = FileChannel.open(path, StandardOpenOption.READ);
+             var out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            var size = in.size();
+            for (var position = 0L; position < size; ) {
+                var transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0L) {
+                    throw new IOException("Source truncated while transferring: " + source);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static Path path(URI source) throws IOException {
+        try {
+            return Path.of(source);
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+            throw new IOException("Invalid file link: " + source, e);
+        }
+    }
+}
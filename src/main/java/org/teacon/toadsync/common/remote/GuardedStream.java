@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.teacon.toadsync.spi.ToadSyncStream;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes the calls to a stream of a provider, since a cancelled download may be aborted while a chunk is still
+ * being written, and ensures that nothing is called after the stream is committed or aborted. Runtime exceptions
+ * thrown by the provider fail the download instead of escaping into the transfer pipeline.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class GuardedStream implements ToadSyncStream {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final String owner;
+    private final ToadSyncStream inner;
+    private boolean done = false;
+
+    GuardedStream(String owner, ToadSyncStream inner) {
+        this.owner = owner;
+        this.inner = inner;
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer chunk) throws IOException {
+        if (!this.done) {
+            try {
+                this.inner.write(chunk);
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to write the stream of " + this.owner + " provider", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void commit(HashCode hash) throws IOException {
+        if (this.done) {
+            throw new IOException("the stream of " + this.owner + " provider has been aborted");
+        }
+        this.done = true;
+        try {
+            this.inner.commit(hash);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to commit the stream of " + this.owner + " provider", e);
+        }
+    }
+
+    @Override
+    public synchronized void abort(Throwable cause) {
+        if (!this.done) {
+            this.done = true;
+            try {
+                this.inner.abort(cause);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to abort the stream of {} provider", this.owner, e);
+            }
+        }
+    }
+}
@@ -23,7 +23,9 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import net.minecraft.FieldsAreNonnullByDefault;
 import net.minecraft.MethodsReturnNonnullByDefault;
+import org.teacon.toadsync.spi.ToadSyncStream;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -36,6 +38,7 @@ import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 @FieldsAreNonnullByDefault
@@ -44,11 +47,16 @@ import java.util.concurrent.atomic.AtomicReference;
 public final class HashFileSubscriber implements HttpResponse.BodySubscriber<HashCode> {
     private final Hasher hasher;
     private final OutputStream out;
+    private final BandwidthGovernor governor;
+    private final @Nullable ToadSyncStream stream;
     private final AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
     private final CompletableFuture<HashCode> result = new CompletableFuture<>();
 
-    public HashFileSubscriber(HashFunction function, Path dest) {
+    public HashFileSubscriber(HashFunction function, Path dest, BandwidthGovernor governor,
+                              @Nullable ToadSyncStream stream) {
         this.hasher = function.newHasher();
+        this.governor = governor;
+        this.stream = stream;
         var out = OutputStream.nullOutputStream();
         try {
             out = Files.newOutputStream(dest);
@@ -70,7 +78,8 @@ public final class HashFileSubscriber implements HttpResponse.BodySubscriber<Has
     @Override
     public void onSubscribe(Flow.Subscription subscription) {
         if (this.subscription.compareAndSet(null, Objects.requireNonNull(subscription))) {
-            subscription.request(Long.MAX_VALUE);
+            // request one item at a time, so that the governor could throttle it through flow control
+            subscription.request(1L);
         } else {
             subscription.cancel();
         }
@@ -78,6 +87,7 @@ public final class HashFileSubscriber implements HttpResponse.BodySubscriber<Has
 
     @Override
     public void onNext(List<ByteBuffer> item) {
+        var total = 0L;
         try {
             var bytes = new byte[item.stream().mapToInt(ByteBuffer::remaining).max().orElse(0)];
             for (var buffer : item) {
@@ -85,9 +95,22 @@ public final class HashFileSubscriber implements HttpResponse.BodySubscriber<Has
                 buffer.get(bytes, 0, remaining);
                 this.hasher.putBytes(bytes, 0, remaining);
                 this.out.write(bytes, 0, remaining);
+                if (this.stream != null) {
+                    this.stream.write(ByteBuffer.wrap(bytes, 0, remaining).asReadOnlyBuffer());
+                }
+                total += remaining;
             }
         } catch (IOException e) {
+            this.subscription.get().cancel();
             this.result.completeExceptionally(this.ensureClose(e));
+            return;
+        }
+        var delayNanos = this.governor.acquire(total);
+        if (delayNanos > 0L) {
+            var delayed = CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS);
+            delayed.execute(() -> this.subscription.get().request(1L));
+        } else {
+            this.subscription.get().request(1L);
         }
     }
 
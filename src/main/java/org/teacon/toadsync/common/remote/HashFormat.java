@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public enum HashFormat {
+    SHA256("sha256", Hashing.sha256()),
+    BLAKE3("blake3", Blake3HashFunction.INSTANCE);
+
+    private final String id;
+    private final Pattern pattern;
+    private final HashFunction function;
+
+    HashFormat(String id, HashFunction function) {
+        this.id = id;
+        this.function = function;
+        this.pattern = Pattern.compile("[A-Fa-f0-9]{" + function.bits() / 4 + "}");
+    }
+
+    public static Optional<HashFormat> byId(String id) {
+        return Arrays.stream(values()).filter(f -> f.id.equals(id)).findFirst();
+    }
+
+    public String id() {
+        return this.id;
+    }
+
+    public HashFunction function() {
+        return this.function;
+    }
+
+    public boolean matches(String hash) {
+        return this.pattern.matcher(hash).matches();
+    }
+
+    public HashCode hash(Path file) throws IOException {
+        if (this.function instanceof Blake3HashFunction blake3) {
+            // tree hashes could be split into subtrees and computed in parallel
+            return blake3.hashFile(file);
+        }
+        return MoreFiles.asByteSource(file).hash(this.function);
+    }
+
+    @Override
+    public String toString() {
+        return this.id;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The files replaced or removed while a sync entry is installed, which are moved aside so that they could be restored.
+ * <p>
+ * Every step is recorded before it is made, so that restoring reverts the steps made so far in the reverse order,
+ * even if the last one has failed halfway. The files moved aside are kept in a directory of their own, which is
+ * removed once the generation is committed, and cleared before the next install in case the game has crashed.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class InstallBackup {
+    private final Path dir;
+    private final List<Step> steps = new ArrayList<>();
+
+    private InstallBackup(Path dir) {
+        this.dir = dir;
+    }
+
+    public static InstallBackup create(Path dir) throws IOException {
+        if (Files.exists(dir)) {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        return new InstallBackup(Files.createDirectories(dir));
+    }
+
+    public void replace(TempDownloadFile temp, Path location) throws IOException {
+        var step = new Step(location, this.moveAside(location), true);
+        this.steps.add(step);
+        temp.move(location);
+    }
+
+    public void remove(Path location) throws IOException {
+        var step = new Step(location, this.moveAside(location), false);
+        this.steps.add(step);
+    }
+
+    public void restore() throws IOException {
+        for (var step : this.steps.reversed()) {
+            var location = step.location();
+            if (step.replaced()) {
+                Files.deleteIfExists(location);
+            }
+            var backup = step.backup();
+            if (backup != null && Files.exists(backup)) {
+                Files.move(backup, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        this.steps.clear();
+    }
+
+    public void discard() throws IOException {
+        this.steps.clear();
+        MoreFiles.deleteRecursively(this.dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    private @Nullable Path moveAside(Path location) throws IOException {
+        if (!Files.exists(location)) {
+            return null;
+        }
+        // names are prefixed by the index of the step, since the files of a manifest may share names with others
+        var backup = this.dir.resolve(this.steps.size() + "-" + location.getFileName());
+        Files.move(location, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return backup;
+    }
+
+    private record Step(Path location, @Nullable Path backup, boolean replaced) {
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.Config;
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A single pass reader of the JSON encoding of the meta and the manifests.
+ * <p>
+ * The JSON encoding has the same structure and keys as the TOML one. Sync entries and manifest files are built while
+ * they are read instead of being collected into config trees first, which matters for manifests of thousands of files.
+ * A document is taken as JSON if its content type says so, or if its first non-whitespace character is an opening
+ * brace, which could never start a TOML document.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class JsonMetaReader {
+    static final String ACCEPT = "application/json, application/toml;q=0.9, */*;q=0.8";
+
+    private JsonMetaReader() {
+    }
+
+    static boolean isJson(@Nullable String contentType, byte[] bytes) throws IOException {
+        var mediaType = contentType == null ? "" : contentType.split(";", 2)[0].strip().toLowerCase(Locale.ROOT);
+        if (mediaType.equals("application/json") || mediaType.endsWith("+json")) {
+            return true;
+        }
+        if (mediaType.equals("application/toml")) {
+            return false;
+        }
+        return startsWithBrace(new ByteArrayInputStream(bytes));
+    }
+
+    static boolean isJson(Path path) throws IOException {
+        try (var in = Files.newInputStream(path)) {
+            return startsWithBrace(in);
+        }
+    }
+
+    static UnmodifiableConfig readConfig(Reader reader) throws ParsingException {
+        try (var json = new JsonReader(reader)) {
+            if (json.peek() != JsonToken.BEGIN_OBJECT || !(readValue(json) instanceof Config config)) {
+                throw new ParsingException("Not a JSON object");
+            }
+            checkEnd(json);
+            return config;
+        } catch (IOException | IllegalStateException e) {
+            throw new ParsingException("Failed to parse the JSON document", e);
+        }
+    }
+
+    static UnmodifiableConfig readMeta(Reader reader, SyncConsumer consumer) throws ParsingException {
+        var config = Config.inMemory();
+        try (var json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                var key = json.nextName();
+                if ("sync".equals(key) && json.peek() == JsonToken.BEGIN_OBJECT) {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        var id = json.nextName();
+                        // non-table sync entries are ignored, which is the same as the TOML encoding
+                        if (json.peek() == JsonToken.BEGIN_OBJECT) {
+                            consumer.accept(id, readEntry(json), config);
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                } else {
+                    var value = readValue(json);
+                    if (value != null) {
+                        config.set(List.of(key), value);
+                    }
+                }
+            }
+            json.endObject();
+            checkEnd(json);
+            return config;
+        } catch (IOException | IllegalStateException e) {
+            throw new ParsingException("Failed to parse the JSON meta", e);
+        }
+    }
+
+    static void readManifest(Reader reader, FileConsumer consumer) throws ParsingException {
+        try (var json = new JsonReader(reader)) {
+            var files = false;
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!"files".equals(json.nextName()) || files) {
+                    json.skipValue();
+                    continue;
+                }
+                if (json.peek() != JsonToken.BEGIN_ARRAY) {
+                    throw new ParsingException("Invalid files entry: " + readValue(json));
+                }
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                        throw new ParsingException("Invalid element of files entry: " + readValue(json));
+                    }
+                    consumer.accept(readEntry(json));
+                }
+                json.endArray();
+                files = true;
+            }
+            json.endObject();
+            checkEnd(json);
+            if (!files) {
+                throw new ParsingException("Invalid files entry: null");
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new ParsingException("Failed to parse the JSON manifest", e);
+        }
+    }
+
+    private static RawEntry readEntry(JsonReader json) throws IOException {
+        Object name = null, hashFormat = null, hash = null, file = null, type = null, next = null, activateAt = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "name" -> name = readValue(json);
+                case "hash-format" -> hashFormat = readValue(json);
+                case "hash" -> hash = readValue(json);
+                case "file" -> file = readValue(json);
+                case "type" -> type = readValue(json);
+                case "next" -> next = json.peek() == JsonToken.BEGIN_OBJECT ? readEntry(json) : readValue(json);
+                case "activate-at" -> activateAt = readValue(json);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new RawEntry(name, hashFormat, hash, file, type, next, activateAt);
+    }
+
+    private static @Nullable Object readValue(JsonReader json) throws IOException {
+        return switch (json.peek()) {
+            case BEGIN_OBJECT -> {
+                var config = Config.inMemory();
+                json.beginObject();
+                while (json.hasNext()) {
+                    var key = json.nextName();
+                    var value = readValue(json);
+                    if (value != null) {
+                        config.set(List.of(key), value);
+                    }
+                }
+                json.endObject();
+                yield config;
+            }
+            case BEGIN_ARRAY -> {
+                var list = new ArrayList<>();
+                json.beginArray();
+                while (json.hasNext()) {
+                    list.add(readValue(json));
+                }
+                json.endArray();
+                yield list;
+            }
+            case STRING -> json.nextString();
+            case NUMBER -> readNumber(json.nextString());
+            case BOOLEAN -> json.nextBoolean();
+            case NULL -> {
+                json.nextNull();
+                yield null;
+            }
+            default -> throw new IOException("Unexpected JSON token: " + json.peek());
+        };
+    }
+
+    private static Number readNumber(String number) {
+        // numbers are typed the same way as the TOML parser so that both encodings share the same checks
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                var l = Long.parseLong(number);
+                return l == (int) l ? (Number) (int) l : (Number) l;
+            } catch (NumberFormatException ignored) {
+                // out of the range of long, which is then read as a double
+            }
+        }
+        return Double.parseDouble(number);
+    }
+
+    private static void checkEnd(JsonReader json) throws IOException {
+        if (json.peek() != JsonToken.END_DOCUMENT) {
+            throw new IOException("Unexpected trailing data of the JSON document");
+        }
+    }
+
+    private static boolean startsWithBrace(InputStream in) throws IOException {
+        for (var b = in.read(); b >= 0; b = in.read()) {
+            // whitespaces and the byte order mark are skipped
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != 0xEF && b != 0xBB && b != 0xBF) {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    interface SyncConsumer {
+        void accept(String id, RawEntry entry, UnmodifiableConfig preceding) throws ParsingException;
+    }
+
+    @FunctionalInterface
+    interface FileConsumer {
+        void accept(RawEntry file) throws ParsingException;
+    }
+
+    record RawEntry(@Nullable Object name, @Nullable Object hashFormat, @Nullable Object hash, @Nullable Object file,
+                    @Nullable Object type, @Nullable Object next, @Nullable Object activateAt) {
+        RemoteMeta.Entry entry(@Nullable URI base) throws ParsingException {
+            var next = switch (this.next) {
+                case null -> null;
+                case RawEntry n -> RemoteMeta.Next.of(n.entry(base), n.activateAt);
+                default -> throw new ParsingException("Invalid next entry: " + this.next);
+            };
+            return RemoteMeta.Entry.of(this.hashFormat, this.hash, this.file, this.type, next, base);
+        }
+    }
+}
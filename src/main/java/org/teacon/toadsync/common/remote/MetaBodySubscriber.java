@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects the body of the remote meta, which is hashed as it streams and bounded in size.
+ * <p>
+ * The transfer is aborted as soon as the declared or the received length exceeds the limit.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class MetaBodySubscriber implements HttpResponse.BodySubscriber<MetaBodySubscriber.Body> {
+    private final long maxSize;
+    private final Hasher hasher = Hashing.sha256().newHasher();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+    private final CompletableFuture<Body> result = new CompletableFuture<>();
+
+    public MetaBodySubscriber(long maxSize, HttpResponse.ResponseInfo info) {
+        this.maxSize = maxSize;
+        var declared = info.headers().firstValueAsLong("Content-Length");
+        if (declared.isPresent() && declared.getAsLong() > maxSize) {
+            this.result.completeExceptionally(this.oversize());
+        }
+    }
+
+    private IOException oversize() {
+        return new IOException("The remote meta exceeds the size limit (" + this.maxSize + " bytes)");
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (!this.subscription.compareAndSet(null, Objects.requireNonNull(subscription)) || this.result.isDone()) {
+            subscription.cancel();
+        } else {
+            subscription.request(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+        if (this.result.isDone()) {
+            return;
+        }
+        var total = item.stream().mapToLong(ByteBuffer::remaining).sum();
+        if (this.out.size() + total > this.maxSize) {
+            this.subscription.get().cancel();
+            this.result.completeExceptionally(this.oversize());
+            return;
+        }
+        for (var buffer : item) {
+            var bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            this.hasher.putBytes(bytes);
+            this.out.writeBytes(bytes);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.result.completeExceptionally(Objects.requireNonNull(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        this.result.complete(new Body(this.hasher.hash(), this.out.toByteArray()));
+    }
+
+    @Override
+    public CompletionStage<Body> getBody() {
+        return this.result;
+    }
+
+    public record Body(HashCode hash, byte[] bytes) {
+        public Reader reader() {
+            return new InputStreamReader(new ByteArrayInputStream(this.bytes), StandardCharsets.UTF_8);
+        }
+    }
+}
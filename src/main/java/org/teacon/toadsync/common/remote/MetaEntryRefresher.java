@@ -18,98 +18,489 @@
 
 package org.teacon.toadsync.common.remote;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import net.minecraft.FieldsAreNonnullByDefault;
 import net.minecraft.MethodsReturnNonnullByDefault;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.teacon.toadsync.spi.ToadSyncProvider;
+import org.teacon.toadsync.spi.ToadSyncStream;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.http.HttpClient;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
 @ParametersAreNonnullByDefault
-public final class MetaEntryRefresher implements Closeable {
+public final class MetaEntryRefresher {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private final Path dir;
     private final HttpClient client;
+    private final DownloadScheduler scheduler;
+    private final SingleFlightTransfers transfers;
+    private final FailedTransfers failures;
     private final ToadSyncProvider provider;
-    private final AtomicReference<HashCode> latestDeliveredHash;
-    private final AtomicReference<CompletableFuture<?>> latestTask;
+    private final AtomicReference<Delivered> latestDelivered;
+    private final AtomicReference<ImmutableMap<String, Delivered>> latestDeliveredFiles;
+    private final AtomicReference<Prestaged> latestPrestaged = new AtomicReference<>();
+    private final AtomicReference<Parsed> latestManifest = new AtomicReference<>();
+    private final AtomicLong applySequence = new AtomicLong();
+    private CompletableFuture<?> latestApply = CompletableFuture.completedFuture(null);
+    // only accessed by the calls chained after each other, so that no more synchronization is needed
+    private @Nullable HashCode supersededOldHash;
+    private boolean supersededApply = false;
 
-    public MetaEntryRefresher(Path dir, HttpClient client, @Nullable HashCode initHash, ToadSyncProvider provider) {
+    public MetaEntryRefresher(Path dir, HttpClient client, DownloadScheduler scheduler,
+                              SingleFlightTransfers transfers, FailedTransfers failures, ToadSyncProvider provider) {
         this.dir = dir;
         this.client = client;
+        this.scheduler = scheduler;
+        this.transfers = transfers;
+        this.failures = failures;
         this.provider = provider;
-        this.latestTask = new AtomicReference<>();
-        this.latestDeliveredHash = new AtomicReference<>(initHash);
+        this.latestDelivered = new AtomicReference<>();
+        this.latestDeliveredFiles = new AtomicReference<>(ImmutableMap.of());
     }
 
-    public void submit(RemoteMeta.Entry entry) {
-        var newHash = entry.hash();
-        if (newHash.equals(this.latestDeliveredHash.get())) {
+    public void load(@Nullable RemoteMeta.Entry localEntry) {
+        var id = this.provider.id();
+        var cls = this.provider.getClass().getName();
+        var type = localEntry == null ? RemoteMeta.EntryType.FILE : localEntry.type();
+        var format = localEntry == null ? HashFormat.SHA256 : localEntry.hashFormat();
+        var location = this.location(type);
+        try {
+            if (Files.exists(location)) {
+                var hash = format.hash(location);
+                switch (type) {
+                    case FILE -> {
+                        var file = location.getFileName();
+                        LOGGER.info("Start loading {} ({}) of {} provider ({}) ...", file, hash, id, cls);
+                        this.latestDelivered.set(new Delivered(type, format, hash));
+                        this.provider.load(hash, location);
+                    }
+                    case MANIFEST -> {
+                        // relative links of the manifest are resolved in the same way as when it was downloaded
+                        var link = Objects.requireNonNull(localEntry).file();
+                        var files = this.verifyFiles(RemoteManifest.read(location, link.isOpaque() ? null : link));
+                        LOGGER.info("Start loading {} files of {} provider ({}) ...", files.size(), id, cls);
+                        this.latestDelivered.set(new Delivered(type, format, hash));
+                        this.provider.loadFiles(hash, files);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to load {} of {} provider ({})", location.getFileName(), id, cls, e);
+        }
+    }
+
+    public String id() {
+        return this.provider.id();
+    }
+
+    public boolean settled(RemoteMeta.Entry entry) {
+        return entry.hash().equals(this.latestDeliveredHash(entry.type(), entry.hashFormat()));
+    }
+
+    Optional<Duration> backoff(RemoteMeta.Entry entry) {
+        var backoff = this.failures.backoff(entry);
+        var parsed = this.latestManifest.get();
+        if (backoff.isEmpty() && parsed != null && parsed.entry().equals(entry)) {
+            // the changed files of the manifest parsed last time would be transferred again, which may fail fast
+            var delivered = this.latestDeliveredFiles.get();
+            return parsed.manifest().files().entrySet().stream().filter(e -> changed(delivered, e))
+                    .flatMap(e -> this.failures.backoff(e.getValue()).stream()).max(Comparator.naturalOrder());
+        }
+        return backoff;
+    }
+
+    CompletableFuture<Staged> stage(RemoteMeta.Entry entry, TaskScope scope) {
+        // a version downloaded before its activation is staged from disk, unless it was diffed against another one
+        var prestaged = this.latestPrestaged.get();
+        if (prestaged != null && prestaged.entry().equals(entry) && !prestaged.staged().isCompletedExceptionally()
+                && Objects.equals(prestaged.base(), this.latestDelivered.get())
+                && this.latestPrestaged.compareAndSet(prestaged, null)) {
+            LOGGER.debug("Stage the prestaged {} for {} provider", entry.hash(), this.provider.id());
+            return prestaged.staged().whenComplete((s, t) -> prestaged.scope().close());
+        }
+        return this.stage(entry, scope, true);
+    }
+
+    void prestage(RemoteMeta.Entry entry, long delayMillis, TaskScope parent) {
+        var current = this.latestPrestaged.get();
+        if (current != null && current.entry().equals(entry) && !current.staged().isCompletedExceptionally()) {
             return;
         }
-        switch (entry.file().getScheme()) {
-            case "data" -> {
-                try (var temp = TempDownloadFile.create(this.dir)) {
-                    temp.write(entry.literal(), newHash);
-                    this.submit(temp, newHash);
-                } catch (IOException e) {
-                    LOGGER.warn("Failed to download file for {} provider", this.provider.id(), e);
-                }
+        // providers are not streamed to, since the version should not be consumed before its activation
+        var scope = parent.child();
+        var workers = this.client.executor().orElseThrow();
+        var delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, workers);
+        var started = scope.fork(() -> CompletableFuture.runAsync(() -> {
+        }, delayed));
+        var staged = started.thenCompose(v -> this.stage(entry, scope, false));
+        var prestaged = new Prestaged(entry, this.latestDelivered.get(), scope, staged);
+        if (!this.latestPrestaged.compareAndSet(current, prestaged)) {
+            prestaged.discard();
+            return;
+        }
+        if (current != null) {
+            current.discard();
+        }
+        LOGGER.info("Prestage {} for {} provider in {} ms", entry.hash(), this.provider.id(), delayMillis);
+        staged.whenComplete((s, t) -> {
+            if (t == null) {
+                LOGGER.info("Prestaged {} for {} provider", entry.hash(), this.provider.id());
+            } else if (!scope.isClosed()) {
+                LOGGER.warn("Failed to prestage {} for {} provider", entry.hash(), this.provider.id(), t);
             }
+        });
+    }
+
+    void retainPrestaged(RemoteMeta.Entry entry) {
+        var current = this.latestPrestaged.get();
+        if (current != null && (!current.entry().equals(entry) || this.settled(entry))) {
+            if (this.latestPrestaged.compareAndSet(current, null)) {
+                current.discard();
+            }
+        }
+    }
+
+    private CompletableFuture<Staged> stage(RemoteMeta.Entry entry, TaskScope scope, boolean streamed) {
+        return switch (entry.type()) {
+            case FILE -> this.fetch(entry, scope, streamed).thenApply(temp -> new Staged(entry, temp, null, Map.of()));
+            case MANIFEST -> this.fetchManifest(entry, scope);
+        };
+    }
+
+    private Path location(RemoteMeta.EntryType type) {
+        return switch (type) {
+            case FILE -> this.dir.toAbsolutePath().resolve(this.provider.artifact());
+            case MANIFEST -> RemoteManifest.location(this.dir.toAbsolutePath(), this.provider.id());
+        };
+    }
+
+    private ArrayList<Path> verifyFiles(RemoteManifest manifest) throws IOException {
+        var files = new ArrayList<Path>(manifest.files().size());
+        var filesDir = RemoteManifest.filesLocation(this.dir.toAbsolutePath(), this.provider.id());
+        var verified = ImmutableMap.<String, Delivered>builderWithExpectedSize(manifest.files().size());
+        var mismatched = new ArrayList<String>();
+        for (var file : manifest.files().entrySet()) {
+            var entry = file.getValue();
+            var location = filesDir.resolve(file.getKey());
+            var hash = Files.exists(location) ? entry.hashFormat().hash(location) : null;
+            if (entry.hash().equals(hash)) {
+                verified.put(file.getKey(), new Delivered(entry.type(), entry.hashFormat(), entry.hash()));
+            } else {
+                mismatched.add(file.getKey());
+            }
+            files.add(location);
+        }
+        // verified files will not be downloaded again even if some of the others are missing
+        this.latestDeliveredFiles.set(verified.build());
+        if (!mismatched.isEmpty()) {
+            throw new IOException("Missing or mismatched files of the manifest: " + mismatched);
+        }
+        return files;
+    }
+
+    private @Nullable HashCode latestDeliveredHash(RemoteMeta.EntryType type, HashFormat format) {
+        var delivered = this.latestDelivered.get();
+        if (delivered == null || delivered.type() != type) {
+            return null;
+        }
+        if (delivered.format() == format) {
+            return delivered.hash();
+        }
+        // the hash format has been switched, so rehash the delivered file instead of downloading it again
+        var destFile = this.location(type);
+        try {
+            var rehashed = new Delivered(type, format, format.hash(destFile));
+            return this.latestDelivered.compareAndSet(delivered, rehashed) ? rehashed.hash() : null;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to rehash {} for {} provider in {} format", destFile, this.provider.id(), format, e);
+            return null;
+        }
+    }
+
+    private CompletableFuture<TempDownloadFile> fetch(RemoteMeta.Entry entry, TaskScope scope, boolean streamed) {
+        // the same content requested by other entries or providers at the same time is transferred only once
+        var hash = entry.hash();
+        return scope.fork(() -> this.transfers.fetch(entry.hashFormat(), hash, () -> this.schedule(entry, streamed)));
+    }
+
+    private CompletableFuture<TempDownloadFile> schedule(RemoteMeta.Entry entry, boolean streamed) {
+        // a recently failed transfer fails fast until its backoff elapses, without taking a download slot
+        var backoff = this.failures.backoff(entry);
+        if (backoff.isPresent()) {
+            var seconds = backoff.get().toSeconds();
+            var message = "Transfer of " + entry.file() + " failed recently, retry in " + seconds + " seconds";
+            return CompletableFuture.failedFuture(new IOException(message));
+        }
+        return this.failures.track(entry, switch (entry.file().getScheme()) {
             case "http", "https" -> {
-                try (var temp = TempDownloadFile.create(this.dir)) {
-                    var pending = temp.download(this.client, entry.request(), newHash);
-                    pending.whenComplete((f, t) -> {
-                        if (t != null) {
-                            LOGGER.warn("Failed to download file for {} provider", this.provider.id(), t);
-                            return;
-                        }
-                        try (var newTemp = f) {
-                            this.submit(newTemp, newHash);
-                        } catch (IOException e) {
-                            LOGGER.warn("Failed to download file for {} provider", this.provider.id(), e);
-                        }
-                    });
-                    var oldTask = this.latestTask.getAndSet(pending);
-                    if (oldTask != null) {
-                        oldTask.cancel(true);
+                var priority = this.provider.priority();
+                var owner = this.provider.id();
+                yield this.scheduler.submit(priority, owner, entry.file(), () -> this.transfer(entry, streamed));
+            }
+            case null, default -> this.transfer(entry, streamed);
+        });
+    }
+
+    private CompletableFuture<TempDownloadFile> transfer(RemoteMeta.Entry entry, boolean streamed) {
+        // the stream is opened only when the transfer is actually started
+        var stream = streamed ? this.openStream(entry) : null;
+        try (var temp = TempDownloadFile.create(this.dir)) {
+            var format = entry.hashFormat();
+            return switch (entry.file().getScheme()) {
+                case "data" -> {
+                    var workers = this.client.executor().orElseThrow();
+                    yield temp.write(entry.literal(), format, entry.hash(), workers, stream);
+                }
+                case "http", "https" -> {
+                    var governor = this.scheduler.governor();
+                    var request = this.failures.request(entry);
+                    yield temp.download(this.client, request, format, entry.hash(), governor, stream);
+                }
+                case null, default -> {
+                    // local sources and other schemes skip the http stack, and are verified in the same way
+                    var transport = Transports.byScheme(entry.file().getScheme())
+                            .filter(t -> Transports.permits(entry.file()))
+                            .orElseThrow(() -> new IOException("Unsupported file entry: " + entry.file()));
+                    var workers = this.client.executor().orElseThrow();
+                    yield temp.transfer(transport, entry.file(), format, entry.hash(), workers, stream);
+                }
+            };
+        } catch (IOException e) {
+            if (stream != null) {
+                stream.abort(e);
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private @Nullable ToadSyncStream openStream(RemoteMeta.Entry entry) {
+        try {
+            var stream = this.provider.openStream(entry.hash());
+            return stream.map(s -> new GuardedStream(this.provider.id(), s)).orElse(null);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to open the stream of {} provider, download without it", this.provider.id(), e);
+            return null;
+        }
+    }
+
+    private CompletableFuture<Staged> fetchManifest(RemoteMeta.Entry entry, TaskScope scope) {
+        return this.fetch(entry, scope, false).thenCompose(temp -> {
+            var manifest = (RemoteManifest) null;
+            try {
+                manifest = RemoteManifest.read(temp.retrieve(), entry.file().isOpaque() ? null : entry.file());
+            } catch (IOException e) {
+                try {
+                    temp.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                return CompletableFuture.failedFuture(e);
+            }
+            // only download the files whose hashes changed, and the scheduler limits concurrent transfers
+            this.latestManifest.set(new Parsed(entry, manifest));
+            var delivered = this.latestDeliveredFiles.get();
+            var fetched = new ConcurrentHashMap<String, TempDownloadFile>();
+            var changed = manifest.files().entrySet().stream().filter(e -> changed(delivered, e));
+            var pending = changed.map(e -> this.fetch(e.getValue(), scope, false).whenComplete((f, t) -> {
+                if (t != null) {
+                    // fail fast: the other transfers of the manifest are useless now
+                    scope.close();
+                } else {
+                    fetched.put(e.getKey(), f);
+                }
+            }));
+            var transfers = pending.toArray(CompletableFuture<?>[]::new);
+            var staged = new Staged(entry, temp, manifest, fetched);
+            return CompletableFuture.allOf(transfers).handle((v, t) -> {
+                if (t != null) {
+                    try {
+                        staged.close();
+                    } catch (IOException e) {
+                        t.addSuppressed(e);
+                    }
+                    throw t instanceof CompletionException e ? e : new CompletionException(t);
+                }
+                return staged;
+            });
+        });
+    }
+
+    private static boolean changed(Map<String, Delivered> delivered, Map.Entry<String, RemoteMeta.Entry> file) {
+        var old = delivered.get(file.getKey());
+        var entry = file.getValue();
+        return old == null || old.format() != entry.hashFormat() || !old.hash().equals(entry.hash());
+    }
+
+    Installed install(Staged staged) throws IOException {
+        var entry = staged.entry();
+        var expected = entry.hash();
+        var destFile = this.location(entry.type());
+        var oldDelivered = this.latestDelivered.get();
+        var oldDeliveredFiles = this.latestDeliveredFiles.get();
+        var oldHash = oldDelivered == null ? null : oldDelivered.hash();
+        // the files replaced or removed are moved aside, so that the whole generation could be rolled back
+        var backup = InstallBackup.create(this.dir.toAbsolutePath().resolve(this.provider.id() + ".backup"));
+        try {
+            var manifest = staged.manifest();
+            if (manifest == null) {
+                backup.replace(staged.main(), destFile);
+                this.latestDelivered.set(new Delivered(entry.type(), entry.hashFormat(), expected));
+                return new Installed(entry, oldHash, List.of(destFile), backup, oldDelivered, oldDeliveredFiles);
+            }
+            // move changed files into place and then remove the files which are no longer listed
+            var filesDir = RemoteManifest.filesLocation(destFile.getParent(), this.provider.id());
+            Files.createDirectories(filesDir);
+            var files = new ArrayList<Path>(manifest.files().size());
+            var delivered = ImmutableMap.<String, Delivered>builderWithExpectedSize(manifest.files().size());
+            for (var file : manifest.files().entrySet()) {
+                var location = filesDir.resolve(file.getKey());
+                var temp = staged.files().get(file.getKey());
+                if (temp != null) {
+                    backup.replace(temp, location);
+                }
+                files.add(location);
+                var fileEntry = file.getValue();
+                delivered.put(file.getKey(), new Delivered(fileEntry.type(), fileEntry.hashFormat(), fileEntry.hash()));
+            }
+            try (var listed = Files.list(filesDir)) {
+                for (var location : (Iterable<Path>) listed::iterator) {
+                    if (!manifest.files().containsKey(location.getFileName().toString())) {
+                        backup.remove(location);
                     }
-                } catch (IOException e) {
-                    LOGGER.warn("Failed to download file for {} provider", this.provider.id(), e);
                 }
             }
+            backup.replace(staged.main(), destFile);
+            this.latestDeliveredFiles.set(delivered.build());
+            this.latestDelivered.set(new Delivered(entry.type(), entry.hashFormat(), expected));
+            return new Installed(entry, oldHash, List.copyOf(files), backup, oldDelivered, oldDeliveredFiles);
+        } catch (IOException e) {
+            try {
+                backup.restore();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            this.latestDelivered.set(oldDelivered);
+            this.latestDeliveredFiles.set(oldDeliveredFiles);
+            throw e;
+        }
+    }
+
+    void rollback(Installed installed) throws IOException {
+        // the other entries of the generation failed to install, so none of them is applied
+        installed.backup().restore();
+        this.latestDelivered.set(installed.oldDelivered());
+        this.latestDeliveredFiles.set(installed.oldDeliveredFiles());
+    }
+
+    CompletableFuture<Void> apply(Installed installed) {
+        var sequence = this.applySequence.incrementAndGet();
+        var workers = this.client.executor().orElseThrow();
+        var applied = (CompletableFuture<Void>) null;
+        synchronized (this) {
+            // calls to the provider never overlap, even if an earlier one has timed out and is left running
+            var previous = this.latestApply.handle((v, t) -> null);
+            applied = previous.thenComposeAsync(v -> this.applyInOrder(installed, sequence, workers), workers);
+            this.latestApply = applied;
         }
+        // only the copy times out, so that the next call still waits for the one left running
+        var timeout = this.provider.timeout();
+        return applied.copy().orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
     }
 
-    private void submit(TempDownloadFile temp, HashCode expected) throws IOException {
-        var destFile = this.dir.toAbsolutePath().resolve(this.provider.artifact());
-        temp.move(destFile);
-        var old = this.latestDeliveredHash.getAndSet(expected);
-        if (old == null) {
-            this.provider.load(expected, destFile);
-        } else {
-            this.provider.update(old, expected, destFile);
+    private CompletableFuture<Void> applyInOrder(Installed installed, long sequence, Executor workers) {
+        var newHash = installed.entry().hash();
+        var oldHash = this.supersededApply ? this.supersededOldHash : installed.oldHash();
+        if (sequence < this.applySequence.get()) {
+            // the files have been replaced by a later generation, which is applied from the oldest hash skipped
+            LOGGER.info("Skip applying {} for {} provider, superseded by a later one", newHash, this.provider.id());
+            this.supersededOldHash = oldHash;
+            this.supersededApply = true;
+            return CompletableFuture.completedFuture(null);
         }
+        this.supersededOldHash = null;
+        this.supersededApply = false;
+        var files = installed.files();
+        // the provider is called on a worker, so that even a blocking call could not stall the caller
+        var executor = this.provider.executor(workers);
+        return switch (installed.entry().type()) {
+            case FILE -> oldHash == null
+                    ? this.provider.loadAsync(newHash, files.getFirst(), executor).toCompletableFuture()
+                    : this.provider.updateAsync(oldHash, newHash, files.getFirst(), executor).toCompletableFuture();
+            case MANIFEST -> oldHash == null
+                    ? this.provider.loadFilesAsync(newHash, files, executor).toCompletableFuture()
+                    : this.provider.updateFilesAsync(oldHash, newHash, files, executor).toCompletableFuture();
+        };
+    }
+
+    private record Delivered(RemoteMeta.EntryType type, HashFormat format, HashCode hash) {
     }
 
-    @Override
-    public void close() {
-        var task = this.latestTask.getAndSet(null);
-        if (task != null) {
-            task.cancel(true);
-            task.exceptionally(t -> null).join();
+    private record Parsed(RemoteMeta.Entry entry, RemoteManifest manifest) {
+    }
+
+    private record Prestaged(RemoteMeta.Entry entry, @Nullable Delivered base,
+                             TaskScope scope, CompletableFuture<Staged> staged) {
+        private void discard() {
+            this.scope.close();
+            this.staged.thenAccept(staged -> {
+                try {
+                    staged.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to discard the prestaged {}", this.entry.hash(), e);
+                }
+            });
+        }
+    }
+
+    record Installed(RemoteMeta.Entry entry, @Nullable HashCode oldHash, List<Path> files, InstallBackup backup,
+                     @Nullable Delivered oldDelivered, ImmutableMap<String, Delivered> oldDeliveredFiles) {
+    }
+
+    record Staged(RemoteMeta.Entry entry, TempDownloadFile main, @Nullable RemoteManifest manifest,
+                  Map<String, TempDownloadFile> files) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            var exception = (IOException) null;
+            for (var temp : this.files.values()) {
+                try {
+                    temp.close();
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+            this.main.close();
+            if (exception != null) {
+                throw exception;
+            }
         }
     }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.io.ParsingException;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Fetches the remote meta and the included documents, falling back to their mirrors if the remotes fail.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class MetaFetcher {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final HttpClient client;
+
+    MetaFetcher(HttpClient client) {
+        this.client = client;
+    }
+
+    public CompletableFuture<Fetched> fetch(RemoteMeta.Validatable validatable, HttpRequest request, long maxSize) {
+        var primary = this.client.sendAsync(request, i -> new MetaBodySubscriber(maxSize, i));
+        var mirror = validatable.mirrorRequest();
+        if (mirror.isEmpty()) {
+            return primary.thenApply(r -> new Fetched(r, false));
+        }
+        // the mirror is only requested if the remote fails, which answers the same document without validators
+        var result = primary.handle((r, t) -> {
+            if (t == null && r.statusCode() < HttpURLConnection.HTTP_BAD_REQUEST) {
+                return CompletableFuture.completedFuture(new Fetched(r, false));
+            }
+            if (t instanceof CancellationException) {
+                return CompletableFuture.<Fetched>failedFuture(t);
+            }
+            LOGGER.warn("Failed to fetch {}, try its mirror {}", request.uri(), mirror.get().uri());
+            var fallback = this.client.sendAsync(mirror.get(), i -> new MetaBodySubscriber(maxSize, i));
+            return fallback.thenApply(m -> new Fetched(m, true));
+        }).thenCompose(Function.identity());
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) {
+                primary.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public static HttpResponse<MetaBodySubscriber.Body> checked(@Nullable Fetched r, @Nullable Throwable t)
+            throws IOException, ParsingException {
+        // throw error if raised in http connection
+        if (t != null || r == null) {
+            if (t instanceof CompletionException e) {
+                t = e.getCause();
+            }
+            if (t instanceof ParsingException e) {
+                throw e;
+            }
+            if (t instanceof IOException e) {
+                throw e;
+            }
+            throw new IOException("Failed to fetch the meta", t);
+        }
+        // throw error if the status code >= 400
+        var response = r.response();
+        if (response.statusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            throw new IOException("Bad status code (" + response.statusCode() + ")");
+        }
+        return response;
+    }
+
+    public record Fetched(HttpResponse<MetaBodySubscriber.Body> response, boolean mirrored) {
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The sync entries changed by a revision of the remote meta, which are staged together and committed together.
+ * <p>
+ * All the entries are downloaded and verified into temporary files in parallel first. Once all of them are staged,
+ * the files are moved into place and then every provider is notified once, inside the commit hook which holds pack
+ * reloads, so that every type of packs is reloaded at most once for a generation. If any entry fails to be staged,
+ * the other transfers are cancelled and the staged files are discarded, so that nothing of the generation applies.
+ * Likewise, if any entry fails to be installed, the files replaced by the others are restored before any provider is
+ * notified.
+ * <p>
+ * The commit always runs on a worker, and never waits for the providers to apply, so that the thread which staged
+ * the generation (which may hold the lock of the refresher) is never blocked by a slow provider.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class MetaGeneration implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final long number;
+    private final ImmutableMap<String, RemoteMeta.Entry> entries;
+    private final TaskScope scope;
+    private final CompletableFuture<?> committed;
+
+    private MetaGeneration(long number, ImmutableMap<String, RemoteMeta.Entry> entries,
+                           TaskScope scope, CompletableFuture<?> committed) {
+        this.number = number;
+        this.entries = entries;
+        this.scope = scope;
+        this.committed = committed;
+    }
+
+    public static MetaGeneration stage(long number, ImmutableMap<String, RemoteMeta.Entry> entries,
+                                       Map<String, MetaEntryRefresher> refreshers, TaskScope scope,
+                                       Executor workers, Function<Supplier<CompletableFuture<?>>,
+                                       CompletableFuture<?>> commitHook) {
+        LOGGER.info("Start staging generation {} of the remote meta ({})", number, entries.keySet());
+        var staged = new ConcurrentHashMap<String, MetaEntryRefresher.Staged>();
+        var pending = entries.entrySet().stream().map(e -> {
+            var refresher = refreshers.get(e.getKey());
+            return refresher.stage(e.getValue(), scope).whenComplete((s, t) -> {
+                if (t == null) {
+                    staged.put(e.getKey(), s);
+                    return;
+                }
+                // fail fast: the other entries of the generation would never be applied now
+                scope.close();
+                if (!(t instanceof CancellationException || t.getCause() instanceof CancellationException)) {
+                    LOGGER.warn("Failed to download file for {} provider", refresher.id(), t);
+                }
+            });
+        });
+        // all the stages are completed (or cancelled) before committing or discarding the staged files
+        var transfers = pending.toArray(CompletableFuture<?>[]::new);
+        var completed = CompletableFuture.allOf(transfers).handleAsync((v, t) -> t, workers);
+        var committed = completed.thenCompose(t -> {
+            if (t != null || scope.isClosed()) {
+                LOGGER.info("Discarded generation {} of the remote meta", number);
+                return CompletableFuture.completedFuture(null);
+            }
+            return commitHook.apply(() -> commit(number, entries, refreshers, staged));
+        }).whenComplete((v, t) -> {
+            scope.close();
+            for (var s : staged.values()) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to clean up staged files of generation {}", number, e);
+                }
+            }
+        });
+        return new MetaGeneration(number, entries, scope, committed);
+    }
+
+    private static CompletableFuture<?> commit(long number, ImmutableMap<String, RemoteMeta.Entry> entries,
+                                               Map<String, MetaEntryRefresher> refreshers,
+                                               Map<String, MetaEntryRefresher.Staged> staged) {
+        // move all the files into place before notifying any provider, since the latter may trigger reloads
+        var installed = new LinkedHashMap<String, MetaEntryRefresher.Installed>(entries.size());
+        for (var id : entries.keySet()) {
+            try {
+                installed.put(id, refreshers.get(id).install(staged.get(id)));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to install file for {} provider, roll back generation {}", id, number, e);
+                rollback(number, installed, refreshers);
+                throw new CompletionException(e);
+            }
+        }
+        for (var entry : installed.entrySet()) {
+            try {
+                entry.getValue().backup().discard();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to clean up replaced files of {} provider", entry.getKey(), e);
+            }
+        }
+        // providers are applied at the same time, and a slow one is only waited for until its timeout
+        var applied = installed.entrySet().stream().map(e -> {
+            var refresher = refreshers.get(e.getKey());
+            return refresher.apply(e.getValue()).exceptionally(t -> {
+                if (t instanceof TimeoutException || t.getCause() instanceof TimeoutException) {
+                    LOGGER.warn("Timed out applying file for {} provider, leave it running", refresher.id());
+                } else {
+                    LOGGER.warn("Failed to apply file for {} provider", refresher.id(), t);
+                }
+                return null;
+            });
+        });
+        return CompletableFuture.allOf(applied.toArray(CompletableFuture<?>[]::new)).thenRun(
+                () -> LOGGER.info("Committed generation {} of the remote meta ({})", number, installed.keySet()));
+    }
+
+    private static void rollback(long number, Map<String, MetaEntryRefresher.Installed> installed,
+                                 Map<String, MetaEntryRefresher> refreshers) {
+        var ids = new ArrayList<>(installed.keySet());
+        for (var id : ids.reversed()) {
+            try {
+                refreshers.get(id).rollback(installed.get(id));
+            } catch (IOException e) {
+                LOGGER.error("Failed to roll back file for {} provider of generation {}", id, number, e);
+            }
+        }
+        LOGGER.info("Rolled back generation {} of the remote meta ({})", number, installed.keySet());
+    }
+
+    public ImmutableMap<String, RemoteMeta.Entry> entries() {
+        return this.entries;
+    }
+
+    public CompletableFuture<?> committed() {
+        return this.committed;
+    }
+
+    public boolean isClosed() {
+        return this.scope.isClosed();
+    }
+
+    @Override
+    public void close() {
+        // cancel without waiting, since transfers and staged files are released by their own callbacks
+        this.scope.close();
+    }
+}
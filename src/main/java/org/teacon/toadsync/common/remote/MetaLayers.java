@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.electronwill.nightconfig.toml.TomlParser;
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The documents included by the remote meta, each of which is polled on its own interval.
+ * <p>
+ * The documents fetched last are kept as they are, and are merged into the remote meta by the refresher whenever it
+ * dispatches, in the order of the layer names. A document which fails to be fetched or read keeps the one read last
+ * time. The change hook is called whenever a polled document changes.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class MetaLayers {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final MetaFetcher fetcher;
+    private final Executor executor;
+    private final TaskScope scope;
+    private final Supplier<Optional<RemoteMeta.Validatable>> main;
+    private final Function<Duration, Duration> delay;
+    private final Runnable changeHook;
+    private final Map<String, LayerPoll> polls = new ConcurrentHashMap<>();
+    private final Map<String, UnmodifiableConfig> documents = new ConcurrentHashMap<>();
+    private final Map<String, RemoteMeta.Validatable> saved = new ConcurrentHashMap<>();
+
+    MetaLayers(MetaFetcher fetcher, Executor executor, TaskScope scope,
+               Supplier<Optional<RemoteMeta.Validatable>> main, Function<Duration, Duration> delay,
+               Runnable changeHook) {
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.scope = scope;
+        this.main = main;
+        this.delay = delay;
+        this.changeHook = changeHook;
+    }
+
+    public void readSaved(RemoteMeta meta, UnmodifiableConfig validators, MetaSidecars sidecars) {
+        for (var entry : meta.layers().entrySet()) {
+            var name = entry.getKey();
+            try {
+                // documents saved last time are merged until they are fetched again, if they are from the same remote
+                var document = sidecars.readLayer(name, entry.getValue(), validators);
+                if (document != null && validators.get(List.of("include", name)) instanceof UnmodifiableConfig c) {
+                    meta.readLayer(name, document);
+                    this.documents.put(name, document);
+                    this.saved.put(name, RemoteMeta.Validatable.of(entry.getValue(), c));
+                }
+            } catch (IOException | ParsingException e) {
+                LOGGER.warn("Failed to read the included meta {} saved last time", name, e);
+            }
+        }
+    }
+
+    public RemoteMeta merge(RemoteMeta meta) {
+        // included documents are merged in the order of the layer names, whichever is fetched first
+        for (var name : meta.layers().keySet()) {
+            var document = this.documents.get(name);
+            if (document != null) {
+                try {
+                    meta = meta.readLayer(name, document);
+                } catch (ParsingException e) {
+                    LOGGER.warn("Failed to read the included meta {}", name, e);
+                }
+            }
+        }
+        return meta;
+    }
+
+    public ImmutableMap<String, RemoteMeta.Validatable> validatables() {
+        var validatables = ImmutableMap.<String, RemoteMeta.Validatable>builder();
+        for (var poll : this.polls.values()) {
+            validatables.put(poll.name, poll.validatable);
+        }
+        return validatables.build();
+    }
+
+    public void refreshNow(MetaSidecars sidecars) {
+        for (var poll : this.polls.values()) {
+            this.poll(poll, 0L, sidecars);
+        }
+    }
+
+    public CompletableFuture<Void> include(RemoteMeta.Validatable validatable, MetaSidecars sidecars) {
+        var layers = validatable.meta().layers();
+        var maxSize = validatable.meta().downloadLimits().maxMetaSizeBytes();
+        // layers which are no longer included the same way stop polling
+        for (var entry : this.polls.entrySet()) {
+            var poll = entry.getValue();
+            var layer = layers.get(entry.getKey());
+            if (!poll.layer.equals(layer) || poll.maxSize != maxSize) {
+                this.polls.remove(entry.getKey(), poll);
+                poll.scope.close();
+                if (layer == null || !layer.remote().equals(poll.layer.remote())) {
+                    this.documents.remove(entry.getKey());
+                }
+            }
+        }
+        var fetched = new ArrayList<CompletableFuture<?>>();
+        for (var entry : layers.entrySet()) {
+            var name = entry.getKey();
+            if (!this.polls.containsKey(name)) {
+                var saved = this.saved.remove(name);
+                var initial = saved != null && saved.meta().equals(entry.getValue())
+                        ? saved : RemoteMeta.Validatable.of(entry.getValue());
+                var poll = new LayerPoll(name, entry.getValue(), maxSize, this.scope.child(), initial);
+                this.polls.put(name, poll);
+                // layers are fetched in parallel, and the failed ones are merged with what was read last time
+                fetched.add(this.refresh(poll, sidecars).handle((changed, t) -> {
+                    // a refresh only completes exceptionally if the layer is no longer polled
+                    if (t == null) {
+                        this.poll(poll, this.delay.apply(poll.interval()).toMillis(), sidecars);
+                    }
+                    return null;
+                }));
+            }
+        }
+        return CompletableFuture.allOf(fetched.toArray(CompletableFuture[]::new));
+    }
+
+    private void poll(LayerPoll poll, long delayMillis, MetaSidecars sidecars) {
+        var delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, this.executor);
+        var pending = poll.scope.fork(() -> CompletableFuture.runAsync(() -> {
+            this.refresh(poll, sidecars).thenAccept(changed -> {
+                if (changed) {
+                    this.changeHook.run();
+                }
+                this.poll(poll, this.delay.apply(poll.interval()).toMillis(), sidecars);
+            });
+        }, delayed));
+        var oldTask = poll.latestTask.getAndSet(pending);
+        if (oldTask != null) {
+            oldTask.cancel(true);
+        }
+    }
+
+    private CompletableFuture<Boolean> refresh(LayerPoll poll, MetaSidecars sidecars) {
+        var validatable = poll.validatable;
+        var request = validatable.request().orElseThrow();
+        var pending = poll.scope.fork(() -> this.fetcher.fetch(validatable, request, poll.maxSize));
+        var oldTask = poll.latestTask.getAndSet(pending);
+        if (oldTask != null) {
+            oldTask.cancel(true);
+        }
+        return pending.handle((r, t) -> {
+            // stop polling if replaced by a newer cycle or no longer included
+            if (t instanceof CancellationException || poll.scope.isClosed()) {
+                throw new CancellationException("Included meta " + poll.name + " is no longer polled");
+            }
+            var newValidatable = validatable;
+            var changed = false;
+            try {
+                var response = MetaFetcher.checked(r, t);
+                if (response.statusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    var body = response.body();
+                    if (validatable.bodyHash().filter(body.hash()::equals).isEmpty()) {
+                        var contentType = response.headers().firstValue("Content-Type").orElse(null);
+                        var json = JsonMetaReader.isJson(contentType, body.bytes());
+                        UnmodifiableConfig document;
+                        try (var reader = body.reader()) {
+                            document = json ? JsonMetaReader.readConfig(reader) : new TomlParser().parse(reader);
+                        }
+                        // check the document by merging it before it replaces the one read last time
+                        var main = this.main.get();
+                        if (main.isPresent()) {
+                            main.get().meta().readLayer(poll.name, document);
+                        }
+                        sidecars.writeLayer(poll.name, document);
+                        this.documents.put(poll.name, document);
+                        changed = true;
+                    }
+                    newValidatable = r.mirrored() ? RemoteMeta.Validatable.of(validatable, body.hash())
+                            : RemoteMeta.Validatable.of(validatable, response.headers(), body.hash());
+                }
+            } catch (IOException | ParsingException e) {
+                LOGGER.warn("Failed to read the included meta {}", poll.name, e);
+            }
+            poll.validatable = newValidatable;
+            var main = this.main.get();
+            if (main.isPresent() && !newValidatable.validators().equals(validatable.validators())) {
+                sidecars.writeValidators(main.get(), this.validatables());
+            }
+            return changed;
+        });
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class LayerPoll {
+        private final String name;
+        private final RemoteMeta layer;
+        private final long maxSize;
+        private final TaskScope scope;
+        private final AtomicReference<CompletableFuture<?>> latestTask = new AtomicReference<>();
+        private volatile RemoteMeta.Validatable validatable;
+
+        private LayerPoll(String name, RemoteMeta layer, long maxSize,
+                          TaskScope scope, RemoteMeta.Validatable validatable) {
+            this.name = name;
+            this.layer = layer;
+            this.maxSize = maxSize;
+            this.scope = scope;
+            this.validatable = validatable;
+        }
+
+        private Duration interval() {
+            return this.layer.interval().orElseThrow();
+        }
+    }
+}
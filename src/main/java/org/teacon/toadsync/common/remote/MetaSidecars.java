@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.electronwill.nightconfig.core.io.WritingException;
+import com.electronwill.nightconfig.core.io.WritingMode;
+import com.electronwill.nightconfig.toml.TomlParser;
+import com.electronwill.nightconfig.toml.TomlWriter;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The files saved besides the local config of the remote meta, so that the entries synced last time are known on
+ * bootstrap, and the first requests after a restart are conditional.
+ * <p>
+ * For a config named {@code <base>.toml}, {@code <base>.validators.toml} holds the validators of the remote meta and
+ * of the included documents, {@code <base>.remote.json} holds the remote meta last fetched in the JSON encoding (the
+ * TOML encoding is saved in the config itself), and {@code <base>.include.<name>.toml} holds the included document
+ * last fetched for each layer.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+final class MetaSidecars {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Path configPath;
+
+    MetaSidecars(Path configPath) {
+        this.configPath = configPath;
+    }
+
+    private Path sibling(String suffix) {
+        var fileName = this.configPath.getFileName().toString();
+        var baseName = fileName.endsWith(".toml") ? fileName.substring(0, fileName.length() - 5) : fileName;
+        return this.configPath.resolveSibling(baseName + suffix);
+    }
+
+    public RemoteMeta readSaved(RemoteMeta meta) {
+        // the entries synced last time are loaded on bootstrap, even if the remote meta is not saved in the config
+        try {
+            var validators = this.readValidators();
+            if (validators != null) {
+                meta = this.readJson(meta, validators);
+                // included documents are merged in the order of the layer names, which is the same as dispatching
+                for (var entry : meta.layers().entrySet()) {
+                    try {
+                        var document = this.readLayer(entry.getKey(), entry.getValue(), validators);
+                        if (document != null) {
+                            meta = meta.readLayer(entry.getKey(), document);
+                        }
+                    } catch (IOException | ParsingException e) {
+                        LOGGER.warn("Failed to read the included meta {} saved last time", entry.getKey(), e);
+                    }
+                }
+            }
+        } catch (IOException | ParsingException e) {
+            LOGGER.warn("Failed to read the remote meta saved last time", e);
+        }
+        return meta;
+    }
+
+    public @Nullable UnmodifiableConfig readValidators() throws IOException, ParsingException {
+        var location = this.sibling(".validators.toml");
+        if (Files.exists(location)) {
+            try (var reader = Files.newBufferedReader(location, StandardCharsets.UTF_8)) {
+                return new TomlParser().parse(reader);
+            }
+        }
+        return null;
+    }
+
+    public RemoteMeta readJson(RemoteMeta meta, UnmodifiableConfig validators) throws IOException, ParsingException {
+        // the remote meta saved in the JSON encoding is only read if it is from the same remote
+        var location = this.sibling(".remote.json");
+        var remote = meta.remote().map(URI::toString);
+        if (remote.filter(r -> r.equals(validators.get("remote"))).isPresent() && Files.exists(location)) {
+            try (var reader = Files.newBufferedReader(location, StandardCharsets.UTF_8)) {
+                return meta.readJson(reader);
+            }
+        }
+        return meta;
+    }
+
+    public @Nullable UnmodifiableConfig readLayer(String name, RemoteMeta layer,
+                                                  UnmodifiableConfig validators) throws IOException, ParsingException {
+        // the document saved last time is only read if its validators are from the same remote
+        if (validators.get(List.of("include", name)) instanceof UnmodifiableConfig c) {
+            var location = this.sibling(".include." + name + ".toml");
+            if (RemoteMeta.Validatable.of(layer, c).bodyHash().isPresent() && Files.exists(location)) {
+                try (var reader = Files.newBufferedReader(location, StandardCharsets.UTF_8)) {
+                    return new TomlParser().parse(reader);
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized void writeValidators(RemoteMeta.Validatable validatable,
+                                             Map<String, RemoteMeta.Validatable> layers) {
+        var location = this.sibling(".validators.toml");
+        var validators = validatable.validators();
+        for (var layer : layers.entrySet()) {
+            validators.set(List.of("include", layer.getKey()), layer.getValue().validators());
+        }
+        try {
+            new TomlWriter().write(validators, location, WritingMode.REPLACE_ATOMIC);
+        } catch (WritingException e) {
+            LOGGER.warn("Failed to write the validators of the remote meta", e);
+        }
+    }
+
+    public void writeJson(byte[] bytes) throws IOException {
+        var location = this.sibling(".remote.json");
+        var temp = location.resolveSibling(location.getFileName() + ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void deleteJson() throws IOException {
+        Files.deleteIfExists(this.sibling(".remote.json"));
+    }
+
+    public void writeLayer(String name, UnmodifiableConfig document) {
+        var location = this.sibling(".include." + name + ".toml");
+        try {
+            new TomlWriter().write(document, location, WritingMode.REPLACE_ATOMIC);
+        } catch (WritingException e) {
+            LOGGER.warn("Failed to write the included meta {}", name, e);
+        }
+    }
+}
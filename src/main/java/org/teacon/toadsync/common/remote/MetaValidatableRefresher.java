@@ -21,7 +21,9 @@ package org.teacon.toadsync.common.remote;
 import com.electronwill.nightconfig.core.file.FileConfig;
 import com.electronwill.nightconfig.core.io.ParsingException;
 import com.electronwill.nightconfig.core.io.ParsingMode;
+import com.google.common.collect.Comparators;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import net.minecraft.FieldsAreNonnullByDefault;
 import net.minecraft.MethodsReturnNonnullByDefault;
 import org.apache.logging.log4j.LogManager;
@@ -34,31 +36,113 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
 @ParametersAreNonnullByDefault
 public final class MetaValidatableRefresher implements Closeable {
     private static final Logger LOGGER = LogManager.getLogger();
+    private static final Duration PUSHED_SAFETY_INTERVAL = Duration.ofMinutes(5L);
+    private static final Duration PRESTAGE_MARGIN = Duration.ofMinutes(1L);
 
     private final HttpClient client;
+    private final MetaFetcher fetcher;
     private final Executor clientExecutor;
-    private final AtomicReference<Task> latestTask;
+    private final DownloadScheduler scheduler;
+    private final FailedTransfers failures;
+    private final TaskScope scope = new TaskScope();
+    private final AtomicReference<CompletableFuture<?>> latestTask;
+    private final AtomicReference<MetaGeneration> latestGeneration = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<?>> latestActivation = new AtomicReference<>();
+    private final AtomicLong generationCount = new AtomicLong();
+    private volatile Function<Supplier<CompletableFuture<?>>, CompletableFuture<?>> commitHook = Supplier::get;
+    private volatile Consumer<RemoteMeta> revisionHook = meta -> {
+    };
+    private final MetaLayers layers;
+    private volatile @Nullable RemoteMeta.Validatable latestValidatable;
+    private volatile @Nullable RemoteMeta latestMeta;
+    private volatile @Nullable FileConfig latestConfig;
+    private volatile @Nullable MetaSidecars latestSidecars;
+    private volatile boolean pushed = false;
+    private final CompletableFuture<Void> firstSync = new CompletableFuture<>();
     private final ImmutableMap<String, MetaEntryRefresher> entryRefreshers;
 
-    public MetaValidatableRefresher(HttpClient client, Map<String, MetaEntryRefresher> entryRefreshers) {
+    public MetaValidatableRefresher(HttpClient client, DownloadScheduler scheduler, FailedTransfers failures,
+                                    Map<String, MetaEntryRefresher> entryRefreshers) {
         this.client = client;
+        this.fetcher = new MetaFetcher(client);
+        this.scheduler = scheduler;
+        this.failures = failures;
         this.latestTask = new AtomicReference<>();
         this.clientExecutor = client.executor().orElseThrow();
         this.entryRefreshers = ImmutableMap.copyOf(entryRefreshers);
+        this.layers = new MetaLayers(this.fetcher, this.clientExecutor, this.scope,
+                () -> Optional.ofNullable(this.latestValidatable), this::delay, this::dispatch);
+    }
+
+    public void setCommitHook(Function<Supplier<CompletableFuture<?>>, CompletableFuture<?>> hook) {
+        this.commitHook = hook;
+    }
+
+    public void setRevisionHook(Consumer<RemoteMeta> hook) {
+        this.revisionHook = hook;
+    }
+
+    public void handlePush(String remote, Map<String, String> hashes) {
+        var validatable = this.latestValidatable;
+        var config = this.latestConfig;
+        var sidecars = this.latestSidecars;
+        var meta = this.latestMeta;
+        if (validatable == null || config == null || sidecars == null || meta == null) {
+            return;
+        }
+        if (validatable.meta().remote().filter(uri -> uri.toString().equals(remote)).isEmpty()) {
+            LOGGER.debug("Ignore the remote meta pushed from another remote: {}", remote);
+            return;
+        }
+        // the server will push the next revision, so polling is only a safety net now
+        this.pushed = true;
+        if (!Maps.transformValues(meta.syncEntries(), e -> e.hash().toString()).equals(hashes)) {
+            LOGGER.info("The server has pushed a new revision of the remote meta, refresh it now");
+            this.refreshNow(validatable, config, sidecars);
+        }
+    }
+
+    public void handlePushDisconnect() {
+        var validatable = this.latestValidatable;
+        var config = this.latestConfig;
+        var sidecars = this.latestSidecars;
+        if (this.pushed && validatable != null && config != null && sidecars != null) {
+            // nobody pushes revisions any longer, so resume polling at once
+            this.pushed = false;
+            this.refreshNow(validatable, config, sidecars);
+        }
+    }
+
+    private void refreshNow(RemoteMeta.Validatable validatable, FileConfig config, MetaSidecars sidecars) {
+        this.submit(validatable, 0L, config, sidecars);
+        this.layers.refreshNow(sidecars);
+    }
+
+    public CompletableFuture<Void> firstSync() {
+        return this.firstSync.copy();
     }
 
     public void submit(FileConfig config) {
@@ -70,16 +154,22 @@ public final class MetaValidatableRefresher implements Closeable {
         } catch (ParsingException e) {
             LOGGER.warn("Failed to read the remote meta", e);
         }
-        // enter submit cycles if http download the meta is needed
+        // enter submit cycles if http download the meta is needed, with the validators saved last time
+        var sidecars = new MetaSidecars(config.getNioPath());
+        var validatable = this.readValidators(meta, sidecars);
+        this.latestConfig = config;
+        this.latestSidecars = sidecars;
+        this.latestValidatable = validatable;
         if (meta.remote().isPresent()) {
-            this.submit(RemoteMeta.Validatable.of(meta), 0L, config);
+            this.submit(validatable, 0L, config, sidecars);
             return;
         }
-        // just sync the entries otherwise
-        this.submit(RemoteMeta.Validatable.of(meta), (Duration) null, config);
+        // just sync the entries (and the ones of the included layers) otherwise
+        this.layers.include(validatable, sidecars).whenComplete((v, t) -> this.dispatch());
     }
 
-    private void submit(RemoteMeta.Validatable validatable, long delayMillis, FileConfig config) {
+    private void submit(RemoteMeta.Validatable validatable, long delayMillis,
+                        FileConfig config, MetaSidecars sidecars) {
         // check if http download of the meta is needed
         var request = validatable.request();
         if (request.isEmpty()) {
@@ -87,91 +177,232 @@ public final class MetaValidatableRefresher implements Closeable {
         }
         // launch a new delay task
         var delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, this.clientExecutor);
-        var pending = CompletableFuture.runAsync(() -> this.submit(validatable, request.get(), config), delayed);
-        // cancel the old delayed task
-        var oldTask = this.latestTask.getAndSet(new Task(pending));
+        var pending = this.scope.fork(() -> CompletableFuture.runAsync(() -> {
+            this.submit(validatable, request.get(), config, sidecars);
+        }, delayed));
+        // cancel the old delayed task without waiting for it
+        var oldTask = this.latestTask.getAndSet(pending);
         if (oldTask != null) {
-            oldTask.close();
+            oldTask.cancel(true);
         }
     }
 
-    private void submit(RemoteMeta.Validatable validatable, HttpRequest request, FileConfig config) {
+    private void submit(RemoteMeta.Validatable validatable, HttpRequest request,
+                        FileConfig config, MetaSidecars sidecars) {
         // launch a new http download task and cancel the old one
-        var pending = this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
-        var oldTask = this.latestTask.getAndSet(new Task(pending));
+        var maxSize = validatable.meta().downloadLimits().maxMetaSizeBytes();
+        var pending = this.scope.fork(() -> this.fetcher.fetch(validatable, request, maxSize));
+        var oldTask = this.latestTask.getAndSet(pending);
         if (oldTask != null) {
-            oldTask.close();
+            oldTask.cancel(true);
         }
         // the callback will be invoked when the complete response is sent
         pending.whenComplete((r, t) -> {
+            // cancelled tasks are either replaced by a newer cycle or closed, so no more cycles are needed
+            if (t instanceof CancellationException || this.scope.isClosed()) {
+                return;
+            }
             var newValidatable = validatable;
             var newInterval = validatable.meta().interval();
             try {
-                // throw error if raised in http connection
-                if (t != null) {
-                    if (t instanceof CompletionException e) {
-                        t = e.getCause();
-                    }
-                    if (t instanceof ParsingException e) {
-                        throw e;
-                    }
-                    if (t instanceof IOException e) {
-                        throw e;
+                var response = MetaFetcher.checked(r, t);
+                // parse the content and add validatable information unless 304 returned or nothing changed
+                if (response.statusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    var body = response.body();
+                    var read = validatable;
+                    var contentType = response.headers().firstValue("Content-Type").orElse(null);
+                    if (validatable.bodyHash().filter(body.hash()::equals).isPresent()) {
+                        LOGGER.debug("Remote meta unchanged ({}), skip parsing it", body.hash());
+                    } else if (JsonMetaReader.isJson(contentType, body.bytes())) {
+                        // the JSON encoding is read without a config, so it is saved as is besides the local config
+                        try (var reader = body.reader()) {
+                            read = validatable.readJson(reader);
+                        }
+                        sidecars.writeJson(body.bytes());
+                    } else {
+                        var parser = config.configFormat().createParser();
+                        try (var reader = body.reader()) {
+                            parser.parse(reader, config, ParsingMode.REPLACE);
+                        }
+                        read = validatable.read(config);
+                        // write new config to file
+                        config.save();
+                        sidecars.deleteJson();
                     }
+                    newValidatable = r.mirrored() ? RemoteMeta.Validatable.of(read, body.hash())
+                            : RemoteMeta.Validatable.of(read, response.headers(), body.hash());
                 }
-                // throw error if the status code >= 400
-                if (r.statusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
-                    throw new IOException("Bad status code (" + r.statusCode() + ")");
-                }
-                // parse the content and add validatable information unless 304 returned
-                if (r.statusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
-                    var parser = config.configFormat().createParser();
-                    parser.parse(r.body(), config, ParsingMode.REPLACE);
-                    newValidatable = RemoteMeta.Validatable.of(validatable.read(config), r.headers());
-                    // write new config to file
-                    config.save();
+                // persist validators so that the first request after a restart is conditional
+                if (!newValidatable.validators().equals(validatable.validators())) {
+                    sidecars.writeValidators(newValidatable, this.layers.validatables());
                 }
                 // get next interval
                 newInterval = newValidatable.meta().interval();
             } catch (IOException | ParsingException e) {
                 LOGGER.warn("Failed to read the remote meta", e);
             } finally {
-                // iterate sync entries and submit refreshes
-                this.submit(newValidatable, newInterval.orElse(null), config);
+                this.latestValidatable = newValidatable;
+                this.include(newValidatable, newInterval.orElse(null), pending, config, sidecars);
+            }
+        });
+    }
+
+    private void include(RemoteMeta.Validatable validatable, @Nullable Duration interval,
+                         CompletableFuture<?> pending, FileConfig config, MetaSidecars sidecars) {
+        // the cycle stops here if it has been replaced by a newer one (such as a refresh requested by the server)
+        var included = this.scope.fork(CompletableFuture<Void>::new);
+        if (!this.latestTask.compareAndSet(pending, included)) {
+            included.cancel(true);
+            return;
+        }
+        // newly included layers are fetched before sync entries are dispatched, so that they are merged at once
+        this.layers.include(validatable, sidecars).whenComplete((v, t) -> included.complete(null));
+        included.whenComplete((v, t) -> {
+            if (t instanceof CancellationException || this.scope.isClosed()) {
+                return;
+            }
+            // iterate sync entries and submit refreshes
+            this.dispatch();
+            // enter next submit cycle if needed, which is slowed down while the server pushes revisions
+            if (interval != null) {
+                this.submit(validatable, this.delay(interval).toMillis(), config, sidecars);
             }
         });
     }
 
-    private void submit(RemoteMeta.Validatable validatable, @Nullable Duration interval, FileConfig config) {
-        var syncEntries = validatable.meta().syncEntries();
+    private Duration delay(Duration interval) {
+        return this.pushed ? Comparators.max(interval, PUSHED_SAFETY_INTERVAL) : interval;
+    }
+
+    private synchronized void dispatch() {
+        var validatable = this.latestValidatable;
+        if (validatable == null) {
+            return;
+        }
+        var meta = this.layers.merge(validatable.meta());
+        var previous = this.latestMeta;
+        this.latestMeta = meta;
+        var syncEntries = meta.syncEntries();
+        var changedEntries = meta.changedEntries(previous);
+        this.scheduler.limit(meta.downloadLimits());
+        this.scheduler.governor().limit(meta.bandwidthLimits());
+        if (!changedEntries.isEmpty()) {
+            LOGGER.debug("Sync entries changed by the remote meta: {}", changedEntries.keySet());
+        }
+        // changed entries and the ones failed last time make up a generation, which is applied as a whole
+        var now = Instant.now();
+        var activation = (Instant) null;
+        var staging = ImmutableMap.<String, RemoteMeta.Entry>builder();
+        var backingOff = new ArrayList<String>();
         for (var entry : this.entryRefreshers.entrySet()) {
             var syncEntry = syncEntries.get(entry.getKey());
-            if (syncEntry != null) {
-                entry.getValue().submit(syncEntry);
+            if (syncEntry == null) {
+                continue;
+            }
+            var refresher = entry.getValue();
+            var active = syncEntry.activeAt(now);
+            if (!refresher.settled(active)) {
+                // entries which would fail fast are left out, so that they could not discard the healthy ones
+                var backoff = refresher.backoff(active);
+                if (backoff.isPresent()) {
+                    var retry = now.plus(backoff.get());
+                    activation = activation == null ? retry : Comparators.min(activation, retry);
+                    backingOff.add(entry.getKey());
+                } else {
+                    staging.put(entry.getKey(), active);
+                }
+            }
+            // next versions are downloaded at random moments before their activation to spread the load of remotes
+            var next = syncEntry.next();
+            if (next != null && now.isBefore(next.activateAt())) {
+                activation = activation == null ? next.activateAt() : Comparators.min(activation, next.activateAt());
+                if (!refresher.settled(next.entry())) {
+                    var window = Duration.between(now, next.activateAt()).minus(PRESTAGE_MARGIN).toMillis();
+                    var delay = window > 0L ? ThreadLocalRandom.current().nextLong(window) : 0L;
+                    refresher.prestage(next.entry(), delay, this.scope);
+                    continue;
+                }
             }
+            refresher.retainPrestaged(active);
+        }
+        if (!backingOff.isEmpty()) {
+            var consecutive = this.failures.consecutiveFailures();
+            var total = this.failures.failureCount();
+            LOGGER.warn("Sync entries {} are left out since their transfers failed recently"
+                    + " (at most {} time(s) in a row, {} failures in total)", backingOff, consecutive, total);
         }
-        // enter next submit cycle if needed
-        if (interval != null) {
-            this.submit(validatable, interval.toMillis(), config);
+        this.activate(activation, now);
+        var entries = staging.build();
+        var committed = entries.isEmpty() ? CompletableFuture.completedFuture(null) : this.stage(entries);
+        // the first sync is done when the generation dispatched for the first time is committed or discarded
+        var first = !this.firstSync.isDone();
+        if (first) {
+            committed.whenComplete((v, t) -> this.firstSync.complete(null));
+        }
+        // announce the revision after it is applied, and always announce the first one
+        if (first || !changedEntries.isEmpty()) {
+            var revision = meta;
+            committed.whenComplete((v, t) -> this.revisionHook.accept(revision));
         }
     }
 
-    @Override
-    public void close() {
-        var task = this.latestTask.getAndSet(null);
-        if (task != null) {
-            task.close();
+    private void activate(@Nullable Instant activation, Instant now) {
+        // dispatch again once the next versions are activated (which are staged from disk by then) or backoffs expire
+        var pending = (CompletableFuture<?>) null;
+        if (activation != null) {
+            var delayMillis = Duration.between(now, activation).toMillis() + 1L;
+            var delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, this.clientExecutor);
+            pending = this.scope.fork(() -> CompletableFuture.runAsync(this::dispatch, delayed));
         }
-        for (var refresher : this.entryRefreshers.values()) {
-            refresher.close();
+        var oldTask = this.latestActivation.getAndSet(pending);
+        if (oldTask != null) {
+            oldTask.cancel(true);
+        }
+    }
+
+    private CompletableFuture<?> stage(ImmutableMap<String, RemoteMeta.Entry> entries) {
+        var running = this.latestGeneration.get();
+        if (running != null) {
+            if (!running.isClosed() && running.entries().equals(entries)) {
+                // the same generation is still in flight, so let it finish instead of starting over
+                return running.committed();
+            }
+            // a superseded generation is discarded as a whole, and its entries are staged again if still needed
+            running.close();
+        }
+        var number = this.generationCount.incrementAndGet();
+        var scope = this.scope.child();
+        var refreshers = this.entryRefreshers;
+        var generation = MetaGeneration.stage(number, entries, refreshers, scope, this.clientExecutor, this.commitHook);
+        this.latestGeneration.set(generation);
+        return generation.committed();
+    }
+
+    public static RemoteMeta readSaved(RemoteMeta meta, Path configPath) {
+        return new MetaSidecars(configPath).readSaved(meta);
+    }
+
+    private RemoteMeta.Validatable readValidators(RemoteMeta meta, MetaSidecars sidecars) {
+        try {
+            var validators = sidecars.readValidators();
+            if (validators != null) {
+                meta = sidecars.readJson(meta, validators);
+                this.layers.readSaved(meta, validators, sidecars);
+                return RemoteMeta.Validatable.of(meta, validators);
+            }
+        } catch (IOException | ParsingException e) {
+            LOGGER.warn("Failed to read the validators of the remote meta", e);
         }
+        return RemoteMeta.Validatable.of(meta);
     }
 
-    private record Task(CompletableFuture<?> pending) implements Closeable {
-        @Override
-        public void close() {
-            this.pending.cancel(true);
-            this.pending.exceptionally(t -> null).join();
+    @Override
+    public void close() {
+        // cancel without waiting, since transfers and staged files are released by their own callbacks
+        this.scope.close();
+        this.client.shutdownNow();
+        if (this.clientExecutor instanceof ExecutorService service) {
+            service.shutdownNow();
         }
     }
 }
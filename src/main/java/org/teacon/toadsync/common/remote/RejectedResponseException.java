@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpResponse;
+
+/**
+ * A response which has been received completely but rejected, such as a bad status code or a mismatched hash.
+ * <p>
+ * The validators of the response are kept, so that the same response could be recognized by a conditional request
+ * later without transferring it again.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class RejectedResponseException extends IOException {
+    private final int statusCode;
+    private final @Nullable String etag;
+    private final @Nullable String lastModified;
+
+    public RejectedResponseException(String message, HttpResponse<?> response) {
+        super(message);
+        this.statusCode = response.statusCode();
+        this.etag = response.headers().firstValue("ETag").orElse(null);
+        this.lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+    }
+
+    public boolean notModified() {
+        return this.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    public @Nullable String etag() {
+        return this.etag;
+    }
+
+    public @Nullable String lastModified() {
+        return this.lastModified;
+    }
+}
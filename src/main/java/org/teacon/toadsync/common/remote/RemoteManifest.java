@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.electronwill.nightconfig.toml.TomlParser;
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The manifest referenced by a {@code sync.{{id}}} section of {@code type = "manifest"}.
+ * <p>
+ * A manifest is a TOML document with a {@code files} array of tables, each of which has a plain file
+ * {@code name} besides the same {@code hash-format}, {@code hash} and {@code file} keys as a sync entry.
+ * Relative file links are resolved against the link of the manifest itself. The order of the array is
+ * kept, since it is meaningful for providers such as resource packs. A manifest could also be encoded in JSON with
+ * the same structure, which is read in a single pass.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class RemoteManifest {
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.+-]*");
+
+    private final ImmutableMap<String, RemoteMeta.Entry> files;
+
+    private RemoteManifest(ImmutableMap<String, RemoteMeta.Entry> files) {
+        this.files = files;
+    }
+
+    public static Path location(Path dir, String id) {
+        return dir.resolve(id + ".manifest.toml");
+    }
+
+    public static Path filesLocation(Path dir, String id) {
+        return dir.resolve(id + ".files");
+    }
+
+    public static RemoteManifest read(Path path, @Nullable URI base) throws IOException {
+        var json = JsonMetaReader.isJson(path);
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return json ? readJson(reader, base) : read(new TomlParser().parse(reader), base);
+        } catch (ParsingException e) {
+            throw new IOException("Failed to parse the manifest in " + path, e);
+        }
+    }
+
+    public static RemoteManifest read(UnmodifiableConfig config, @Nullable URI base) throws ParsingException {
+        var files = new LinkedHashMap<String, RemoteMeta.Entry>();
+        if (!(config.get("files") instanceof List<?> list)) {
+            throw new ParsingException("Invalid files entry: " + config.get("files"));
+        }
+        for (var element : list) {
+            if (!(element instanceof UnmodifiableConfig m)) {
+                throw new ParsingException("Invalid element of files entry: " + element);
+            }
+            put(files, m.get("name"), RemoteMeta.Entry.read(m, base));
+        }
+        return new RemoteManifest(ImmutableMap.copyOf(files));
+    }
+
+    public static RemoteManifest readJson(Reader reader, @Nullable URI base) throws ParsingException {
+        // files are checked one by one while they are read, without building a config tree for the whole manifest
+        var files = new LinkedHashMap<String, RemoteMeta.Entry>();
+        JsonMetaReader.readManifest(reader, file -> put(files, file.name(), file.entry(base)));
+        return new RemoteManifest(ImmutableMap.copyOf(files));
+    }
+
+    private static void put(Map<String, RemoteMeta.Entry> files,
+                            @Nullable Object nameValue, RemoteMeta.Entry entry) throws ParsingException {
+        var name = switch (nameValue) {
+            case String s when FILE_NAME.matcher(s).matches() -> s;
+            case null, default -> throw new ParsingException("Invalid name entry: " + nameValue);
+        };
+        if (entry.type() != RemoteMeta.EntryType.FILE) {
+            throw new ParsingException("Nested manifest unsupported: " + name);
+        }
+        if (files.put(name, entry) != null) {
+            throw new ParsingException("Duplicate name entry: " + name);
+        }
+    }
+
+    public ImmutableMap<String, RemoteMeta.Entry> files() {
+        return this.files;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.files.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof RemoteManifest that && this.files.equals(that.files);
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.teacon.toadsync.common.remote;
 
+import com.electronwill.nightconfig.core.Config;
 import com.electronwill.nightconfig.core.UnmodifiableConfig;
 import com.electronwill.nightconfig.core.io.ParsingException;
 import com.google.common.collect.ImmutableMap;
@@ -29,14 +30,15 @@ import net.minecraft.MethodsReturnNonnullByDefault;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -47,17 +49,33 @@ import java.util.regex.Pattern;
 @MethodsReturnNonnullByDefault
 @ParametersAreNonnullByDefault
 public final class RemoteMeta {
-    private static final Pattern SHA256 = Pattern.compile("[A-fa-f0-9]{64}");
-    private static final RemoteMeta EMPTY = new RemoteMeta(null, null, ImmutableMap.of());
+    private static final Pattern LAYER_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final RemoteMeta EMPTY = new RemoteMeta(null, null, null, null,
+            DownloadLimits.DEFAULT, BandwidthLimits.DEFAULT, ImmutableMap.of(), ImmutableMap.of());
 
     private final ImmutableMap<String, Entry> syncEntries;
+    private final ImmutableMap<String, Entry> mergedEntries;
+    private final ImmutableMap<String, RemoteMeta> layers;
+    private final DownloadLimits downloadLimits;
+    private final BandwidthLimits bandwidthLimits;
+    private final @Nullable Duration startupDeadline;
     private final @Nullable Duration interval;
     private final @Nullable URI remote;
+    private final @Nullable URI mirror;
 
-    private RemoteMeta(@Nullable Duration interval, @Nullable URI remote, ImmutableMap<String, Entry> syncEntries) {
+    private RemoteMeta(@Nullable Duration interval, @Nullable URI remote, @Nullable URI mirror,
+                       @Nullable Duration startupDeadline, DownloadLimits downloadLimits,
+                       BandwidthLimits bandwidthLimits, ImmutableMap<String, RemoteMeta> layers,
+                       ImmutableMap<String, Entry> syncEntries) {
+        this.startupDeadline = startupDeadline;
+        this.downloadLimits = downloadLimits;
+        this.bandwidthLimits = bandwidthLimits;
+        this.mergedEntries = merge(layers, syncEntries);
         this.syncEntries = syncEntries;
         this.interval = interval;
+        this.layers = layers;
         this.remote = remote;
+        this.mirror = mirror;
     }
 
     public static RemoteMeta of() {
@@ -65,6 +83,30 @@ public final class RemoteMeta {
     }
 
     public RemoteMeta read(UnmodifiableConfig config) throws ParsingException {
+        return this.read(config, ImmutableMap.<String, Entry>builder().putAll(this.syncEntries), Map.of());
+    }
+
+    public RemoteMeta readJson(Reader reader) throws ParsingException {
+        // sync entries are built while they are read if the remote precedes them (which is how the publisher writes),
+        // and are only kept raw until the end of the document otherwise, since their base is not known before that
+        var entries = ImmutableMap.<String, Entry>builder().putAll(this.syncEntries);
+        var deferred = new LinkedHashMap<String, JsonMetaReader.RawEntry>();
+        var base = new URI[1];
+        var config = JsonMetaReader.readMeta(reader, (id, raw, preceding) -> {
+            if (preceding.contains("remote")) {
+                if (base[0] == null) {
+                    base[0] = link(preceding, "remote", null, this.remote);
+                }
+                entries.put(id, raw.entry(base[0]));
+            } else {
+                deferred.put(id, raw);
+            }
+        });
+        return this.read(config, entries, deferred);
+    }
+
+    private RemoteMeta read(UnmodifiableConfig config, ImmutableMap.Builder<String, Entry> entryBuilder,
+                            Map<String, JsonMetaReader.RawEntry> deferred) throws ParsingException {
         var interval = switch (config.get("interval")) {
             case null -> this.interval;
             case Integer i when i >= 1L -> Duration.ofSeconds(i);
@@ -72,99 +114,352 @@ public final class RemoteMeta {
             case Double d when d >= 5e-4 && d <= Integer.MAX_VALUE -> Duration.ofMillis(Math.round(d * 1e3));
             default -> throw new ParsingException("Invalid interval entry: " + config.get("interval"));
         };
-        var remote = switch (config.get("remote")) {
-            case null -> this.remote;
-            case String s -> {
-                try {
-                    var uri = new URI(s);
-                    if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
-                        throw new ParsingException("Unsupported protocol of remote entry: " + s);
-                    }
-                    yield uri;
-                } catch (URISyntaxException e) {
-                    throw new ParsingException("Invalid remote entry: " + s, e);
-                }
-            }
-            default -> throw new ParsingException("Invalid remote entry: " + config.get("remote"));
-        };
+        var remote = link(config, "remote", null, this.remote);
         if (interval == null && remote != null) {
             throw new ParsingException("Interval must be specified if remote is specified");
         }
-        var syncEntries = new LinkedHashMap<>(this.syncEntries);
+        var mirror = link(config, "mirror", null, this.mirror);
+        var startupDeadline = switch (config.get("startup-deadline")) {
+            case null -> this.startupDeadline;
+            case Integer i when i >= 0L -> Duration.ofSeconds(i);
+            case Long l when l >= 0L && l <= Integer.MAX_VALUE -> Duration.ofSeconds(l);
+            case Double d when d >= 0.0 && d <= Integer.MAX_VALUE -> Duration.ofMillis(Math.round(d * 1e3));
+            default -> throw new ParsingException("Invalid startup-deadline entry: " + config.get("startup-deadline"));
+        };
+        var downloadLimits = switch (config.get("download")) {
+            case null -> this.downloadLimits;
+            case UnmodifiableConfig c -> this.downloadLimits.read(c);
+            default -> throw new ParsingException("Invalid download entry: " + config.get("download"));
+        };
+        var bandwidthLimits = switch (config.get("bandwidth")) {
+            case null -> this.bandwidthLimits;
+            case UnmodifiableConfig c -> this.bandwidthLimits.read(c);
+            default -> throw new ParsingException("Invalid bandwidth entry: " + config.get("bandwidth"));
+        };
+        var layers = switch (config.get("include")) {
+            case null -> this.layers;
+            case UnmodifiableConfig c -> this.readLayers(c, interval, remote);
+            default -> throw new ParsingException("Invalid include entry: " + config.get("include"));
+        };
+        var entries = readEntries(config, remote, entryBuilder, deferred);
+        return new RemoteMeta(interval, remote, mirror,
+                startupDeadline, downloadLimits, bandwidthLimits, layers, entries);
+    }
+
+    public RemoteMeta readLayer(String name, UnmodifiableConfig config) throws ParsingException {
+        var layer = this.layers.get(name);
+        if (layer == null) {
+            throw new ParsingException("Unknown include entry: " + name);
+        }
+        // only the sync entries of an included document are read, which replace the ones read last time
+        var entries = readEntries(config, layer.remote, ImmutableMap.builder(), Map.of());
+        var layers = new LinkedHashMap<>(this.layers);
+        layers.put(name, new RemoteMeta(layer.interval, layer.remote, layer.mirror, null,
+                DownloadLimits.DEFAULT, BandwidthLimits.DEFAULT, ImmutableMap.of(), entries));
+        return new RemoteMeta(this.interval, this.remote, this.mirror, this.startupDeadline,
+                this.downloadLimits, this.bandwidthLimits, ImmutableMap.copyOf(layers), this.syncEntries);
+    }
+
+    private ImmutableMap<String, RemoteMeta> readLayers(UnmodifiableConfig config, @Nullable Duration defaultInterval,
+                                                        @Nullable URI base) throws ParsingException {
+        // layers are sorted by their names so that they are always merged in the same order
+        var layers = new TreeMap<String, RemoteMeta>();
+        for (var include : config.entrySet()) {
+            var name = include.getKey();
+            if (!LAYER_NAME.matcher(name).matches() || !(include.getValue() instanceof UnmodifiableConfig m)) {
+                throw new ParsingException("Invalid include entry: " + name);
+            }
+            var interval = switch (m.get("interval")) {
+                case null -> defaultInterval;
+                case Integer i when i >= 1L -> Duration.ofSeconds(i);
+                case Long l when l >= 1L && l <= Integer.MAX_VALUE -> Duration.ofSeconds(l);
+                case Double d when d >= 5e-4 && d <= Integer.MAX_VALUE -> Duration.ofMillis(Math.round(d * 1e3));
+                default -> throw new ParsingException("Invalid interval entry of " + name + ": " + m.get("interval"));
+            };
+            var remote = link(m, "remote", base, null);
+            if (interval == null || remote == null) {
+                throw new ParsingException("Both interval and remote must be specified for include " + name);
+            }
+            var mirror = link(m, "mirror", base, null);
+            // the entries read last time are kept until the included document is read again
+            var previous = this.layers.get(name);
+            var entries = previous != null && remote.equals(previous.remote) ? previous.syncEntries
+                    : ImmutableMap.<String, Entry>of();
+            layers.put(name, new RemoteMeta(interval, remote, mirror, null,
+                    DownloadLimits.DEFAULT, BandwidthLimits.DEFAULT, ImmutableMap.of(), entries));
+        }
+        return ImmutableMap.copyOf(layers);
+    }
+
+    private static ImmutableMap<String, Entry> readEntries(UnmodifiableConfig config, @Nullable URI base,
+                                                           ImmutableMap.Builder<String, Entry> syncEntries,
+                                                           Map<String, JsonMetaReader.RawEntry> deferred)
+            throws ParsingException {
+        // the builder is seeded with the previous entries, whose positions are kept if they are read again
         if (config.get("sync") instanceof UnmodifiableConfig c) {
             for (var sync : c.entrySet()) {
                 if (sync.getValue() instanceof UnmodifiableConfig m) {
-                    var fmt = switch (m.get("hash-format")) {
-                        case String s -> s;
-                        case null -> "sha256";
-                        default -> throw new ParsingException("Invalid hash format: " + m.get("hash-format"));
-                    };
-                    if (!"sha256".equals(fmt)) {
-                        throw new ParsingException("Only sha256 hash format supported but get " + fmt);
-                    }
-                    var hash = switch (m.get("hash")) {
-                        case String s when SHA256.matcher(s).matches() -> HashCode.fromString(s);
-                        case null, default -> throw new ParsingException("Invalid sha256 hash entry: " + m.get("hash"));
-                    };
-                    var file = switch (m.get("file")) {
-                        case String s -> {
-                            try {
-                                var uri = remote == null ? new URI(s) : remote.resolve(new URI(s));
-                                yield switch (uri.getScheme()) {
-                                    case "data", "http", "https" -> uri;
-                                    case null, default -> throw new ParsingException("Invalid file entry: " + s);
-                                };
-                            } catch (URISyntaxException e) {
-                                throw new ParsingException("Invalid file entry: " + s, e);
-                            }
-                        }
-                        case null, default -> throw new ParsingException("Invalid file entry: " + m.get("file"));
-                    };
-                    var id = sync.getKey();
-                    syncEntries.put(id, new Entry(hash, file));
+                    syncEntries.put(sync.getKey(), Entry.read(m, base));
                 }
             }
         }
-        return new RemoteMeta(interval, remote, ImmutableMap.copyOf(syncEntries));
+        for (var raw : deferred.entrySet()) {
+            syncEntries.put(raw.getKey(), raw.getValue().entry(base));
+        }
+        return syncEntries.buildKeepingLast();
+    }
+
+    private static ImmutableMap<String, Entry> merge(ImmutableMap<String, RemoteMeta> layers,
+                                                     ImmutableMap<String, Entry> syncEntries) {
+        if (layers.isEmpty()) {
+            return syncEntries;
+        }
+        // entries of included layers override the ones of the including meta, in the order of the layer names
+        var merged = new LinkedHashMap<>(syncEntries);
+        for (var layer : layers.values()) {
+            merged.putAll(layer.syncEntries);
+        }
+        return ImmutableMap.copyOf(merged);
+    }
+
+    private static @Nullable URI link(UnmodifiableConfig config, String key,
+                                      @Nullable URI base, @Nullable URI fallback) throws ParsingException {
+        return switch (config.get(key)) {
+            case null -> fallback;
+            case String s -> {
+                try {
+                    var uri = base == null ? new URI(s) : base.resolve(new URI(s));
+                    if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+                        throw new ParsingException("Unsupported protocol of " + key + " entry: " + s);
+                    }
+                    yield uri;
+                } catch (URISyntaxException e) {
+                    throw new ParsingException("Invalid " + key + " entry: " + s, e);
+                }
+            }
+            default -> throw new ParsingException("Invalid " + key + " entry: " + config.get(key));
+        };
     }
 
     public Optional<URI> remote() {
         return Optional.ofNullable(this.remote);
     }
 
+    public Optional<URI> mirror() {
+        return Optional.ofNullable(this.mirror);
+    }
+
     public Optional<Duration> interval() {
         return Optional.ofNullable(this.interval);
     }
 
+    public Optional<Duration> startupDeadline() {
+        return Optional.ofNullable(this.startupDeadline);
+    }
+
+    public DownloadLimits downloadLimits() {
+        return this.downloadLimits;
+    }
+
+    public BandwidthLimits bandwidthLimits() {
+        return this.bandwidthLimits;
+    }
+
+    public ImmutableMap<String, RemoteMeta> layers() {
+        return this.layers;
+    }
+
     public ImmutableMap<String, Entry> syncEntries() {
-        return this.syncEntries;
+        return this.mergedEntries;
+    }
+
+    public ImmutableMap<String, Entry> changedEntries(@Nullable RemoteMeta previous) {
+        if (previous == null) {
+            return this.mergedEntries;
+        }
+        var changed = ImmutableMap.<String, Entry>builder();
+        for (var entry : this.mergedEntries.entrySet()) {
+            if (!entry.getValue().equals(previous.mergedEntries.get(entry.getKey()))) {
+                changed.put(entry);
+            }
+        }
+        return changed.build();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.syncEntries, this.interval, this.remote);
+        return Objects.hash(this.syncEntries, this.layers, this.downloadLimits,
+                this.bandwidthLimits, this.startupDeadline, this.interval, this.remote, this.mirror);
     }
 
     @Override
     public boolean equals(Object o) {
         return this == o || o instanceof RemoteMeta that && this.syncEntries.equals(that.syncEntries)
+                && this.layers.equals(that.layers) && Objects.equals(this.mirror, that.mirror)
+                && this.downloadLimits.equals(that.downloadLimits) && this.bandwidthLimits.equals(that.bandwidthLimits)
+                && Objects.equals(this.startupDeadline, that.startupDeadline)
                 && Objects.equals(this.interval, that.interval) && Objects.equals(this.remote, that.remote);
     }
 
-    public record Entry(HashCode hash, URI file) {
-        public byte[] literal() throws IOException {
-            try {
-                if (!"data".equals(this.file.getScheme())) {
-                    throw new IllegalArgumentException("invalid URI scheme " + this.file.getScheme());
+    private static int positive(UnmodifiableConfig config, String key, int fallback) throws ParsingException {
+        return switch (config.get(key)) {
+            case null -> fallback;
+            case Integer i when i >= 1 -> i;
+            default -> throw new ParsingException("Invalid " + key + " entry: " + config.get(key));
+        };
+    }
+
+    private static int nonNegative(UnmodifiableConfig config, String key, int fallback) throws ParsingException {
+        return switch (config.get(key)) {
+            case null -> fallback;
+            case Integer i when i >= 0 -> i;
+            default -> throw new ParsingException("Invalid " + key + " entry: " + config.get(key));
+        };
+    }
+
+    public record DownloadLimits(int maxConcurrency, int maxConcurrencyPerHost, int maxMetaSize) {
+        // unit of max meta size: KiB
+        public static final DownloadLimits DEFAULT = new DownloadLimits(4, 2, 1024);
+
+        public DownloadLimits read(UnmodifiableConfig config) throws ParsingException {
+            var maxConcurrency = positive(config, "max-concurrency", this.maxConcurrency);
+            var maxConcurrencyPerHost = positive(config, "max-concurrency-per-host", this.maxConcurrencyPerHost);
+            var maxMetaSize = positive(config, "max-meta-size", this.maxMetaSize);
+            return new DownloadLimits(maxConcurrency, maxConcurrencyPerHost, maxMetaSize);
+        }
+
+        public long maxMetaSizeBytes() {
+            return this.maxMetaSize * 1024L;
+        }
+    }
+
+    public record BandwidthLimits(int floor, int ceiling) {
+        // unit: KiB/s, and zero ceiling means unlimited
+        public static final BandwidthLimits DEFAULT = new BandwidthLimits(512, 0);
+
+        public BandwidthLimits read(UnmodifiableConfig config) throws ParsingException {
+            var floor = positive(config, "floor", this.floor);
+            var ceiling = nonNegative(config, "ceiling", this.ceiling);
+            if (ceiling > 0 && ceiling < floor) {
+                throw new ParsingException("Bandwidth ceiling (" + ceiling + ") is lower than floor (" + floor + ")");
+            }
+            return new BandwidthLimits(floor, ceiling);
+        }
+    }
+
+    public enum EntryType {
+        FILE, MANIFEST
+    }
+
+    public record Next(Entry entry, Instant activateAt) {
+        public static Next read(UnmodifiableConfig m, @Nullable URI base) throws ParsingException {
+            return of(Entry.read(m, base), m.get("activate-at"));
+        }
+
+        static Next of(Entry entry, @Nullable Object activateAtValue) throws ParsingException {
+            if (entry.next != null) {
+                throw new ParsingException("Nested next entry unsupported");
+            }
+            var activateAt = switch (activateAtValue) {
+                case OffsetDateTime t -> t.toInstant();
+                case String s -> {
+                    try {
+                        yield OffsetDateTime.parse(s).toInstant();
+                    } catch (DateTimeParseException e) {
+                        throw new ParsingException("Invalid activate-at entry: " + s, e);
+                    }
                 }
-                var split = this.file.toString().substring(5).split(",", 2);
-                if (split.length != 2) {
-                    throw new IllegalArgumentException("invalid data URI: " + this.file);
+                case null, default -> throw new ParsingException("Invalid activate-at entry: " + activateAtValue);
+            };
+            return new Next(entry, activateAt);
+        }
+    }
+
+    public record Entry(HashCode hash, HashFormat hashFormat, URI file, EntryType type, @Nullable Next next) {
+        public Entry(HashCode hash, HashFormat hashFormat, URI file, EntryType type) {
+            this(hash, hashFormat, file, type, null);
+        }
+
+        public static Entry read(UnmodifiableConfig m, @Nullable URI base) throws ParsingException {
+            var next = switch (m.get("next")) {
+                case null -> null;
+                case UnmodifiableConfig c -> Next.read(c, base);
+                default -> throw new ParsingException("Invalid next entry: " + m.get("next"));
+            };
+            return of(m.get("hash-format"), m.get("hash"), m.get("file"), m.get("type"), next, base);
+        }
+
+        static Entry of(@Nullable Object hashFormatValue, @Nullable Object hashValue, @Nullable Object fileValue,
+                        @Nullable Object typeValue, @Nullable Next next, @Nullable URI base) throws ParsingException {
+            var fmt = switch (hashFormatValue) {
+                case String s -> HashFormat.byId(s).orElseThrow(() -> new ParsingException(
+                        "Unsupported hash format: " + s + " (supported: sha256, blake3)"));
+                case null -> HashFormat.SHA256;
+                default -> throw new ParsingException("Invalid hash format: " + hashFormatValue);
+            };
+            var hash = switch (hashValue) {
+                case String s when fmt.matches(s) -> HashCode.fromString(s.toLowerCase(Locale.ROOT));
+                case null, default -> throw new ParsingException("Invalid " + fmt + " hash entry: " + hashValue);
+            };
+            var file = switch (fileValue) {
+                case String s -> {
+                    try {
+                        var uri = base == null ? new URI(s) : base.resolve(new URI(s));
+                        yield switch (uri.getScheme()) {
+                            case "data", "http", "https" -> uri;
+                            case String scheme when Transports.permits(uri) -> uri;
+                            case String scheme when Transports.byScheme(scheme).isPresent() ->
+                                    throw new ParsingException("File entry not under allowed transport roots: " + s);
+                            case null, default -> throw new ParsingException("Invalid file entry: " + s);
+                        };
+                    } catch (URISyntaxException e) {
+                        throw new ParsingException("Invalid file entry: " + s, e);
+                    }
                 }
-                var decodeCharset = StandardCharsets.ISO_8859_1; // latin-1 for byte-to-byte mapping
-                var data = URLDecoder.decode(split[1], decodeCharset).getBytes(decodeCharset);
-                return split[1].endsWith(";base64") ? Base64.getDecoder().decode(data) : data;
-            } catch (IllegalArgumentException e) {
+                case null, default -> throw new ParsingException("Invalid file entry: " + fileValue);
+            };
+            var type = switch (typeValue) {
+                case null -> EntryType.FILE;
+                case String s when "file".equals(s) -> EntryType.FILE;
+                case String s when "manifest".equals(s) -> EntryType.MANIFEST;
+                default -> throw new ParsingException("Invalid type entry: " + typeValue);
+            };
+            if (next != null && next.entry.type != type) {
+                throw new ParsingException("Mismatched type of next entry: " + next.entry.type);
+            }
+            return new Entry(hash, fmt, file, type, next);
+        }
+
+        public Entry activeAt(Instant now) {
+            // the next version replaces the current one since its activation, and neither carries it any longer
+            if (this.next != null && !now.isBefore(this.next.activateAt)) {
+                return this.next.entry;
+            }
+            return this.next == null ? this : new Entry(this.hash, this.hashFormat, this.file, this.type);
+        }
+
+        public void write(Config m, @Nullable URI base) {
+            if (this.type == EntryType.MANIFEST) {
+                m.set("type", "manifest");
+            }
+            if (this.hashFormat != HashFormat.SHA256) {
+                m.set("hash-format", this.hashFormat.id());
+            }
+            m.set("hash", this.hash.toString());
+            // links are written relative to the directory of the base if possible, which is the inverse of read
+            m.set("file", (base == null ? this.file : base.resolve(".").relativize(this.file)).toString());
+            if (this.next != null) {
+                var n = m.createSubConfig();
+                this.next.entry.write(n, base);
+                n.set("activate-at", this.next.activateAt.atOffset(ZoneOffset.UTC));
+                m.set("next", n);
+            }
+        }
+
+        public InputStream literal() throws IOException {
+            try {
+                return DataUriInputStream.open(this.file);
+            } catch (IOException e) {
                 throw new IOException("Failed to parse the entry as a literal (data URI)", e);
             }
         }
@@ -186,38 +481,85 @@ public final class RemoteMeta {
         private final RemoteMeta meta;
         private final @Nullable String etag;
         private final @Nullable Instant lastModified;
+        private final @Nullable HashCode bodyHash;
 
-        private Validatable(RemoteMeta meta, @Nullable String etag, @Nullable Instant lastModified) {
+        private Validatable(RemoteMeta meta, @Nullable String etag,
+                            @Nullable Instant lastModified, @Nullable HashCode bodyHash) {
             this.meta = meta;
             this.etag = etag;
             this.lastModified = lastModified;
+            this.bodyHash = bodyHash;
         }
 
         public static Validatable of(RemoteMeta meta) {
-            return new Validatable(meta, null, null);
+            return new Validatable(meta, null, null, null);
         }
 
-        public static Validatable of(Validatable old, HttpHeaders headers) throws IOException {
+        public static Validatable of(RemoteMeta meta, UnmodifiableConfig validators) {
+            // saved validators are only reused for the same remote
+            if (meta.remote == null || !meta.remote.toString().equals(validators.get("remote"))) {
+                return new Validatable(meta, null, null, null);
+            }
+            var etag = validators.get("etag") instanceof String s ? s : null;
+            var lastModified = validators.get("last-modified") instanceof String s ? lastModified(s) : null;
+            var bodyHash = validators.get("body-hash") instanceof String s && HashFormat.SHA256.matches(s)
+                    ? HashCode.fromString(s.toLowerCase(Locale.ROOT)) : null;
+            return new Validatable(meta, etag, lastModified, bodyHash);
+        }
+
+        public static Validatable of(Validatable old, HttpHeaders headers, HashCode bodyHash) throws IOException {
             if (noStore(headers) != null) {
-                return new Validatable(old.meta, null, null);
+                return new Validatable(old.meta, null, null, bodyHash);
             }
-            return new Validatable(old.meta, etag(headers), lastModified(headers));
+            return new Validatable(old.meta, etag(headers), lastModified(headers), bodyHash);
+        }
+
+        public static Validatable of(Validatable old, HashCode bodyHash) {
+            // validators of a mirror are meaningless to the remote, so the next request should be unconditional
+            return new Validatable(old.meta, null, null, bodyHash);
         }
 
         public Validatable read(UnmodifiableConfig config) throws ParsingException {
-            return new Validatable(this.meta.read(config), this.etag, this.lastModified);
+            return new Validatable(this.meta.read(config), this.etag, this.lastModified, this.bodyHash);
+        }
+
+        public Validatable readJson(Reader reader) throws ParsingException {
+            return new Validatable(this.meta.readJson(reader), this.etag, this.lastModified, this.bodyHash);
         }
 
         public RemoteMeta meta() {
             return this.meta;
         }
 
+        public Optional<HashCode> bodyHash() {
+            return Optional.ofNullable(this.bodyHash);
+        }
+
+        public Config validators() {
+            var config = Config.inMemory();
+            if (this.meta.remote != null) {
+                config.set("remote", this.meta.remote.toString());
+            }
+            if (this.etag != null) {
+                config.set("etag", this.etag);
+            }
+            if (this.lastModified != null) {
+                config.set("last-modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                        this.lastModified.atOffset(ZoneOffset.UTC)));
+            }
+            if (this.bodyHash != null) {
+                config.set("body-hash", this.bodyHash.toString());
+            }
+            return config;
+        }
+
         public Optional<HttpRequest> request() {
             var remote = this.meta.remote;
             if (remote == null) {
                 return Optional.empty();
             }
-            var builder = HttpRequest.newBuilder(remote);
+            // the JSON encoding is preferred by the client, while it is up to the remote to choose
+            var builder = HttpRequest.newBuilder(remote).header("Accept", JsonMetaReader.ACCEPT);
             if (this.etag != null) {
                 builder = builder.header("If-None-Match", this.etag);
             }
@@ -229,15 +571,25 @@ public final class RemoteMeta {
             return Optional.of(builder.header("Cache-Control", "no-cache").GET().build());
         }
 
+        public Optional<HttpRequest> mirrorRequest() {
+            var mirror = this.meta.mirror;
+            if (mirror == null) {
+                return Optional.empty();
+            }
+            var builder = HttpRequest.newBuilder(mirror).header("Accept", JsonMetaReader.ACCEPT);
+            return Optional.of(builder.header("Cache-Control", "no-cache").GET().build());
+        }
+
         @Override
         public int hashCode() {
-            return Objects.hash(this.meta, this.etag, this.lastModified);
+            return Objects.hash(this.meta, this.etag, this.lastModified, this.bodyHash);
         }
 
         @Override
         public boolean equals(Object o) {
             return this == o || o instanceof Validatable that && this.meta.equals(that.meta)
-                    && Objects.equals(this.etag, that.etag) && Objects.equals(this.lastModified, that.lastModified);
+                    && Objects.equals(this.etag, that.etag) && Objects.equals(this.lastModified, that.lastModified)
+                    && Objects.equals(this.bodyHash, that.bodyHash);
         }
 
         private static @Nullable String noStore(HttpHeaders httpHeaders) {
@@ -256,9 +608,16 @@ public final class RemoteMeta {
 
         private static @Nullable Instant lastModified(HttpHeaders httpHeaders) {
             try {
-                var str = Iterables.getOnlyElement(httpHeaders.allValues("Last-Modified"), "");
+                return lastModified(Iterables.getOnlyElement(httpHeaders.allValues("Last-Modified"), ""));
+            } catch (IllegalArgumentException ignored) {
+                return null;
+            }
+        }
+
+        private static @Nullable Instant lastModified(String str) {
+            try {
                 return str.isEmpty() ? null : DateTimeFormatter.RFC_1123_DATE_TIME.parse(str, Instant::from);
-            } catch (IllegalArgumentException | DateTimeParseException ignored) {
+            } catch (DateTimeParseException ignored) {
                 return null;
             }
         }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Shares the transfers of the same content among all the providers.
+ * <p>
+ * Transfers are keyed by the expected hash, so that concurrent requests for the same content, such as two sync
+ * entries or a sync entry and a file of a manifest, share one transfer and one verified temporary file. Every
+ * requester then receives its own temporary file, which is hard-linked to the verified one (or copied if hard links
+ * are unsupported), so that it could be moved to the location of its provider independently. The transfer is only
+ * cancelled after all of its requesters are cancelled.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class SingleFlightTransfers {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Map<Key, Flight> flights = new HashMap<>();
+
+    public CompletableFuture<TempDownloadFile> fetch(HashFormat format, HashCode hash,
+                                                     Supplier<CompletableFuture<TempDownloadFile>> transfer) {
+        var key = new Key(format, hash);
+        var waiter = new CompletableFuture<TempDownloadFile>();
+        var flight = (Flight) null;
+        var leading = false;
+        synchronized (this) {
+            flight = this.flights.get(key);
+            if (flight == null) {
+                flight = new Flight(key);
+                this.flights.put(key, flight);
+                leading = true;
+            } else {
+                LOGGER.debug("Share the transfer of {} ({})", hash, format);
+            }
+            flight.waiters.add(waiter);
+        }
+        var joined = flight;
+        waiter.whenComplete((r, t) -> {
+            if (waiter.isCancelled()) {
+                this.leave(joined, waiter);
+            }
+        });
+        // start the transfer outside the lock since it may complete synchronously
+        if (leading) {
+            this.start(joined, transfer);
+        }
+        return waiter;
+    }
+
+    private void start(Flight flight, Supplier<CompletableFuture<TempDownloadFile>> transfer) {
+        var pending = (CompletableFuture<TempDownloadFile>) null;
+        try {
+            pending = transfer.get();
+        } catch (RuntimeException e) {
+            pending = CompletableFuture.failedFuture(e);
+        }
+        var abandoned = false;
+        synchronized (this) {
+            flight.pending = pending;
+            abandoned = flight.waiters.isEmpty();
+        }
+        // all the requesters may have been cancelled before the transfer is started
+        if (abandoned) {
+            pending.cancel(true);
+        }
+        pending.whenComplete((temp, t) -> this.land(flight, temp, t));
+    }
+
+    private void leave(Flight flight, CompletableFuture<TempDownloadFile> waiter) {
+        var pending = (CompletableFuture<TempDownloadFile>) null;
+        synchronized (this) {
+            flight.waiters.remove(waiter);
+            if (flight.waiters.isEmpty() && this.flights.get(flight.key) == flight) {
+                this.flights.remove(flight.key);
+                pending = flight.pending;
+            }
+        }
+        if (pending != null) {
+            pending.cancel(true);
+        }
+    }
+
+    private void land(Flight flight, @Nullable TempDownloadFile temp, @Nullable Throwable t) {
+        var waiters = (List<CompletableFuture<TempDownloadFile>>) null;
+        synchronized (this) {
+            this.flights.remove(flight.key, flight);
+            waiters = List.copyOf(flight.waiters);
+            flight.waiters.clear();
+        }
+        if (t != null || temp == null) {
+            var cause = t != null ? t : new IOException("No file transferred for " + flight.key.hash());
+            waiters.forEach(waiter -> waiter.completeExceptionally(cause));
+            return;
+        }
+        try {
+            // the only requester takes the verified file itself
+            if (waiters.size() == 1) {
+                complete(waiters.getFirst(), temp);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to clean up the transfer of {}", flight.key.hash(), e);
+            return;
+        }
+        // the requesters share the verified file by links, which is removed after all the links are created
+        try (temp) {
+            for (var waiter : waiters) {
+                if (!waiter.isDone()) {
+                    try {
+                        complete(waiter, temp.share());
+                    } catch (IOException e) {
+                        waiter.completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to clean up the shared transfer of {}", flight.key.hash(), e);
+        }
+    }
+
+    private static void complete(CompletableFuture<TempDownloadFile> waiter, TempDownloadFile temp) throws IOException {
+        if (!waiter.complete(temp)) {
+            // the requester has been cancelled, so nobody else would release the file
+            temp.close();
+        }
+    }
+
+    private record Key(HashFormat format, HashCode hash) {
+    }
+
+    @FieldsAreNonnullByDefault
+    @MethodsReturnNonnullByDefault
+    @ParametersAreNonnullByDefault
+    private static final class Flight {
+        private final Key key;
+        private final List<CompletableFuture<TempDownloadFile>> waiters = new ArrayList<>();
+        private @Nullable CompletableFuture<TempDownloadFile> pending;
+
+        private Flight(Key key) {
+            this.key = key;
+        }
+    }
+}
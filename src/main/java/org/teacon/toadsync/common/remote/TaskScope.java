@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A tree of asynchronous tasks which are cancelled together.
+ * <p>
+ * Closing a scope cancels all the futures forked in it and closes all its child scopes, without waiting
+ * for any of them, so that it is safe to close a scope inside a callback of the pool threads. Forking in
+ * a closed scope results in a cancelled future. This is a non-blocking counterpart of the (preview)
+ * structured concurrency API for {@link CompletableFuture} based pipelines.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class TaskScope implements Closeable {
+    private final @Nullable TaskScope parent;
+    private final Set<TaskScope> children = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<?>> forks = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    public TaskScope() {
+        this.parent = null;
+    }
+
+    private TaskScope(TaskScope parent) {
+        this.parent = parent;
+    }
+
+    public TaskScope child() {
+        var child = new TaskScope(this);
+        this.children.add(child);
+        if (this.closed) {
+            child.close();
+        }
+        return child;
+    }
+
+    public <T> CompletableFuture<T> fork(Supplier<CompletableFuture<T>> task) {
+        if (this.closed) {
+            return CompletableFuture.failedFuture(new CancellationException("Task scope has been closed"));
+        }
+        var forked = task.get();
+        this.forks.add(forked);
+        forked.whenComplete((r, t) -> this.forks.remove(forked));
+        // the scope may be closed concurrently before the fork is registered
+        if (this.closed) {
+            forked.cancel(true);
+        }
+        return forked;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+        }
+        for (var forked : this.forks) {
+            forked.cancel(true);
+        }
+        for (var child : this.children) {
+            child.close();
+        }
+    }
+}
@@ -19,31 +19,39 @@
 package org.teacon.toadsync.common.remote;
 
 import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import com.google.common.hash.HashingInputStream;
 import net.minecraft.FieldsAreNonnullByDefault;
 import net.minecraft.MethodsReturnNonnullByDefault;
+import org.teacon.toadsync.spi.ToadSyncStream;
+import org.teacon.toadsync.spi.ToadSyncTransport;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
 @ParametersAreNonnullByDefault
 public final class TempDownloadFile implements Closeable {
-    private static final HashFunction SHA256 = Hashing.sha256();
+    private static final int BUFFER_SIZE = 8192;
 
     private final AtomicReference<Path> location;
 
@@ -59,7 +67,7 @@ public final class TempDownloadFile implements Closeable {
         this.location = new AtomicReference<>(location);
     }
 
-    private Path retrieve() throws IOException {
+    public Path retrieve() throws IOException {
         var location = this.location.get();
         if (location == null) {
             throw new IOException("the temp file has been closed of transferred to another one");
@@ -78,16 +86,80 @@ public final class TempDownloadFile implements Closeable {
         return new TempDownloadFile(dir);
     }
 
-    public void write(byte[] literal, HashCode expected) throws IOException {
-        var location = this.retrieve();
-        try (var in = new HashingInputStream(SHA256, new ByteArrayInputStream(literal))) {
+    public TempDownloadFile write(InputStream literal, HashFormat format, HashCode expected,
+                                  @Nullable ToadSyncStream stream) throws IOException {
+        var transferred = new TempDownloadFile(this);
+        var location = transferred.retrieve();
+        try (var in = new HashingInputStream(format.function(), literal)) {
             try (var out = Files.newOutputStream(location)) {
-                in.transferTo(out);
+                var buffer = new byte[BUFFER_SIZE];
+                for (var read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                    if (stream != null) {
+                        stream.write(ByteBuffer.wrap(buffer, 0, read).asReadOnlyBuffer());
+                    }
+                }
             }
             var actual = in.hash();
             if (!actual.equals(expected)) {
-                throw new IOException("mismatched sha256 hash, expected: " + expected + ", actual: " + actual);
+                throw new IOException("mismatched " + format + " hash, expected: " + expected + ", actual: " + actual);
+            }
+            if (stream != null) {
+                stream.commit(actual);
+            }
+            return transferred;
+        } catch (IOException e) {
+            if (stream != null) {
+                stream.abort(e);
+            }
+            try {
+                transferred.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
             }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<TempDownloadFile> write(InputStream literal, HashFormat format, HashCode expected,
+                                                     Executor executor,
+                                                     @Nullable ToadSyncStream stream) throws IOException {
+        var transferred = new TempDownloadFile(this);
+        var result = new CompletableFuture<TempDownloadFile>();
+        // the literal is decoded and hashed on the workers, since it may be as large as a file
+        executor.execute(() -> {
+            try {
+                var written = transferred.write(literal, format, expected, stream);
+                if (!result.complete(written)) {
+                    written.close();
+                }
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public TempDownloadFile share() throws IOException {
+        var source = this.retrieve();
+        var shared = new TempDownloadFile(source.getParent());
+        var location = shared.retrieve();
+        try {
+            // hard links share the verified content without copying it, and copying is the fallback
+            try {
+                Files.delete(location);
+                Files.createLink(location, source);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(source, location, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return shared;
+        } catch (IOException e) {
+            try {
+                shared.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
     }
 
@@ -102,10 +174,13 @@ public final class TempDownloadFile implements Closeable {
     }
 
     public CompletableFuture<TempDownloadFile> download(HttpClient client, HttpRequest request,
-                                                        HashCode expected) throws IOException {
+                                                        HashFormat format, HashCode expected,
+                                                        BandwidthGovernor governor,
+                                                        @Nullable ToadSyncStream stream) throws IOException {
         var transferred = new TempDownloadFile(this);
         var location = transferred.retrieve();
-        var pending = client.sendAsync(request, i -> new HashFileSubscriber(SHA256, location));
+        var function = format.function();
+        var pending = client.sendAsync(request, i -> new HashFileSubscriber(function, location, governor, stream));
         var result = pending.<TempDownloadFile>newIncompleteFuture();
         pending.whenComplete((r, t) -> {
             try {
@@ -113,15 +188,28 @@ public final class TempDownloadFile implements Closeable {
                     throw t instanceof IOException e ? e : new IOException(t);
                 }
                 var statusCode = r.statusCode();
+                if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    // only conditional requests, which revalidate a failed response, could be answered with it
+                    throw new RejectedResponseException("Not modified since the last rejected response", r);
+                }
                 if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
-                    throw new IOException("Bad status code (" + statusCode + ")");
+                    throw new RejectedResponseException("Bad status code (" + statusCode + ")", r);
                 }
                 var actual = r.body();
                 if (!actual.equals(expected)) {
-                    throw new IOException("mismatched sha256 hash, expected: " + expected + ", actual: " + actual);
+                    var message = "mismatched " + format + " hash, expected: " + expected + ", actual: " + actual;
+                    throw new RejectedResponseException(message, r);
+                }
+                if (stream != null) {
+                    stream.commit(actual);
+                }
+                if (!result.complete(transferred)) {
+                    throw new CancellationException("the download has been cancelled");
                 }
-                result.complete(transferred);
             } catch (Throwable throwable) {
+                if (stream != null) {
+                    stream.abort(throwable);
+                }
                 try {
                     transferred.close();
                 } catch (IOException e) {
@@ -130,9 +218,73 @@ public final class TempDownloadFile implements Closeable {
                 result.completeExceptionally(throwable);
             }
         });
+        // cancelling the result aborts the http exchange as well
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) {
+                pending.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public CompletableFuture<TempDownloadFile> transfer(ToadSyncTransport transport, URI source,
+                                                        HashFormat format, HashCode expected, Executor executor,
+                                                        @Nullable ToadSyncStream stream) throws IOException {
+        var transferred = new TempDownloadFile(this);
+        var location = transferred.retrieve();
+        var pending = transport.transferAsync(source, location, executor).toCompletableFuture();
+        var result = new CompletableFuture<TempDownloadFile>();
+        // the transferred file is hashed on the workers, since it may be large and it has never been read here
+        pending.whenCompleteAsync((r, t) -> {
+            try {
+                if (t != null) {
+                    throw t instanceof CompletionException e && e.getCause() != null ? e.getCause() : t;
+                }
+                var actual = stream == null ? format.hash(location) : replay(location, format, stream);
+                if (!actual.equals(expected)) {
+                    var message = "mismatched " + format + " hash, expected: " + expected + ", actual: " + actual;
+                    throw new IOException(message);
+                }
+                if (stream != null) {
+                    stream.commit(actual);
+                }
+                if (!result.complete(transferred)) {
+                    throw new CancellationException("the transfer has been cancelled");
+                }
+            } catch (Throwable throwable) {
+                if (stream != null) {
+                    stream.abort(throwable);
+                }
+                try {
+                    transferred.close();
+                } catch (IOException e) {
+                    throwable.addSuppressed(e);
+                }
+                result.completeExceptionally(throwable);
+            }
+        }, executor);
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) {
+                pending.cancel(true);
+            }
+        });
         return result;
     }
 
+    private static HashCode replay(Path location, HashFormat format, ToadSyncStream stream) throws IOException {
+        // the stream receives the chunks in the same way as a download, before the hash is verified
+        var hasher = format.function().newHasher();
+        try (var channel = FileChannel.open(location, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer.clear()) >= 0) {
+                buffer.flip();
+                hasher.putBytes(buffer.duplicate());
+                stream.write(buffer.asReadOnlyBuffer());
+            }
+        }
+        return hasher.hash();
+    }
+
     @Override
     public void close() throws IOException {
         var location = this.location.getAndSet(null);
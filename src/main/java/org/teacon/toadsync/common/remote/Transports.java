@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.FieldsAreNonnullByDefault;
+import net.minecraft.MethodsReturnNonnullByDefault;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.teacon.toadsync.spi.ToadSyncTransport;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * The transports of the file links whose schemes are not handled by ToadSync itself.
+ * <p>
+ * The built-in {@code file} transport comes first, followed by the ones discovered via Java SPI. Transports are
+ * loaded once on first use, since file links are checked while the remote meta is read.
+ * <p>
+ * Links of these schemes are only accepted under the roots allowed by the local transport config, since a remote
+ * meta (or a server pushing one) should never make the game open arbitrary local files or network shares.
+ */
+@FieldsAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+@ParametersAreNonnullByDefault
+public final class Transports {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Set<String> RESERVED_SCHEMES = Set.of("data", "http", "https");
+
+    private static volatile ImmutableList<URI> allowedRoots = ImmutableList.of();
+
+    private Transports() {
+    }
+
+    public static Optional<ToadSyncTransport> byScheme(@Nullable String scheme) {
+        var key = scheme == null ? "" : scheme.toLowerCase(Locale.ROOT);
+        return Optional.ofNullable(Holder.BY_SCHEME.get(key));
+    }
+
+    public static ImmutableList<URI> readRoots(UnmodifiableConfig config) throws ParsingException {
+        var roots = switch (config.get("roots")) {
+            case null -> List.of();
+            case List<?> list -> list;
+            default -> throw new ParsingException("Invalid roots entry: " + config.get("roots"));
+        };
+        var builder = ImmutableList.<URI>builder();
+        for (var root : roots) {
+            try {
+                var uri = root instanceof String s ? new URI(s) : null;
+                if (uri == null || !uri.isAbsolute() || byScheme(uri.getScheme()).isEmpty()) {
+                    throw new ParsingException("Invalid root of transports: " + root);
+                }
+                builder.add(uri);
+            } catch (URISyntaxException e) {
+                throw new ParsingException("Invalid root of transports: " + root, e);
+            }
+        }
+        return builder.build();
+    }
+
+    public static void allowRoots(Collection<URI> roots) {
+        allowedRoots = ImmutableList.copyOf(roots);
+        LOGGER.debug("Transports allowed under roots: {}", allowedRoots);
+    }
+
+    public static boolean permits(URI uri) {
+        var scheme = uri.getScheme();
+        if (byScheme(scheme).isEmpty()) {
+            return false;
+        }
+        for (var root : allowedRoots) {
+            if (scheme.equalsIgnoreCase(root.getScheme()) && under(uri, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean under(URI uri, URI root) {
+        if ("file".equalsIgnoreCase(root.getScheme())) {
+            // file links are compared as paths, so that neither dot segments nor unc hosts could escape the roots
+            try {
+                return Path.of(uri).normalize().startsWith(Path.of(root).normalize());
+            } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+                return false;
+            }
+        }
+        // other links are compared by whole path segments, so that a root of /share never permits /share-other
+        var prefix = root.normalize().toString();
+        var target = uri.normalize().toString();
+        if (prefix.endsWith("/")) {
+            return target.startsWith(prefix);
+        }
+        return target.equals(prefix) || target.startsWith(prefix + "/");
+    }
+
+    private static ImmutableMap<String, ToadSyncTransport> load() {
+        var bySchemes = new LinkedHashMap<String, ToadSyncTransport>();
+        var transports = new ArrayList<ToadSyncTransport>();
+        transports.add(new FileTransport());
+        ServiceLoader.load(ToadSyncTransport.class).forEach(transports::add);
+        for (var transport : transports) {
+            var cls = transport.getClass().getName();
+            for (var scheme : transport.schemes()) {
+                if (RESERVED_SCHEMES.contains(scheme)) {
+                    LOGGER.warn("Ignore {} scheme of transport ({}) since it is handled by ToadSync", scheme, cls);
+                    continue;
+                }
+                var existing = bySchemes.putIfAbsent(scheme, transport);
+                if (existing != null) {
+                    LOGGER.info("Ignore duplicate {} scheme of transport ({}) ...", scheme, cls);
+                }
+            }
+        }
+        LOGGER.debug("Transports loaded for schemes: {}", bySchemes.keySet());
+        return ImmutableMap.copyOf(bySchemes);
+    }
+
+    private static final class Holder {
+        private static final ImmutableMap<String, ToadSyncTransport> BY_SCHEME = load();
+    }
+}
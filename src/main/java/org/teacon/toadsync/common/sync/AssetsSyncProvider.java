@@ -28,6 +28,8 @@ import org.teacon.toadsync.spi.ToadSyncProvider;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
@@ -48,13 +50,41 @@ public final class AssetsSyncProvider implements ToadSyncProvider {
         return dist.isClient();
     }
 
+    @Override
+    public boolean loadsOffThread() {
+        // the pack is only indexed and registered, which is independent of other providers
+        return true;
+    }
+
+    @Override
+    public boolean awaitedOnBootstrap() {
+        // the pack is not needed until resource packs are discovered, which waits for it instead
+        return false;
+    }
+
+    @Override
+    public Set<String> dependencies() {
+        // the overridden options may select resource packs, so they are loaded first
+        return Set.of("options");
+    }
+
     @Override
     public void load(HashCode initHash, Path artifactLocation) throws IOException {
-        ToadSync.OBJECTS.readAssets(artifactLocation);
+        ToadSync.OBJECTS.readAssets(List.of(artifactLocation));
     }
 
     @Override
     public void update(HashCode oldHash, HashCode newHash, Path artifactLocation) throws IOException {
-        ToadSync.OBJECTS.readAssets(artifactLocation);
+        ToadSync.OBJECTS.readAssets(List.of(artifactLocation));
+    }
+
+    @Override
+    public void loadFiles(HashCode initHash, List<Path> files) throws IOException {
+        ToadSync.OBJECTS.readAssets(files);
+    }
+
+    @Override
+    public void updateFiles(HashCode oldHash, HashCode newHash, List<Path> files) throws IOException {
+        ToadSync.OBJECTS.readAssets(files);
     }
 }
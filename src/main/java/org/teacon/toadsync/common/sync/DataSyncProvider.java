@@ -28,6 +28,7 @@ import org.teacon.toadsync.spi.ToadSyncProvider;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
@@ -48,13 +49,29 @@ public final class DataSyncProvider implements ToadSyncProvider {
         return true;
     }
 
+    @Override
+    public boolean loadsOffThread() {
+        // the pack is only indexed and registered, which is independent of other providers
+        return true;
+    }
+
     @Override
     public void load(HashCode initHash, Path artifactLocation) throws IOException {
-        ToadSync.OBJECTS.readData(artifactLocation);
+        ToadSync.OBJECTS.readData(List.of(artifactLocation));
     }
 
     @Override
     public void update(HashCode oldHash, HashCode newHash, Path artifactLocation) throws IOException {
-        ToadSync.OBJECTS.readData(artifactLocation);
+        ToadSync.OBJECTS.readData(List.of(artifactLocation));
+    }
+
+    @Override
+    public void loadFiles(HashCode initHash, List<Path> files) throws IOException {
+        ToadSync.OBJECTS.readData(files);
+    }
+
+    @Override
+    public void updateFiles(HashCode oldHash, HashCode newHash, List<Path> files) throws IOException {
+        ToadSync.OBJECTS.readData(files);
     }
 }
@@ -49,13 +49,25 @@ public final class OptionsSyncProvider implements ToadSyncProvider {
         return true;
     }
 
+    @Override
+    public boolean loadsOffThread() {
+        // options are only parsed into an index, which is read when vanilla loads options.txt
+        return true;
+    }
+
+    @Override
+    public int priority() {
+        // small file which is needed on the next launch
+        return 10;
+    }
+
     @Override
     public void load(HashCode initHash, Path artifactLocation) throws IOException {
         ToadSync.OBJECTS.readOptions(initHash, artifactLocation);
     }
 
     @Override
-    public void update(HashCode oldHash, HashCode newHash, Path artifactLocation) {
-        ToadSync.OBJECTS.markOptionsUpdated(newHash);
+    public void update(HashCode oldHash, HashCode newHash, Path artifactLocation) throws IOException {
+        ToadSync.OBJECTS.updateOptions(newHash, artifactLocation);
     }
 }
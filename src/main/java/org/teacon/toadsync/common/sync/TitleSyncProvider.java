@@ -28,6 +28,7 @@ import org.teacon.toadsync.spi.ToadSyncProvider;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Set;
 
 @FieldsAreNonnullByDefault
 @MethodsReturnNonnullByDefault
@@ -48,6 +49,30 @@ public final class TitleSyncProvider implements ToadSyncProvider {
         return dist.isClient();
     }
 
+    @Override
+    public boolean loadsOffThread() {
+        // the title is only applied when the game window is created
+        return true;
+    }
+
+    @Override
+    public boolean awaitedOnBootstrap() {
+        // a title loaded after the game window is created updates the window instead
+        return false;
+    }
+
+    @Override
+    public Set<String> dependencies() {
+        // the language of the title follows the overridden options, so they are loaded first
+        return Set.of("options");
+    }
+
+    @Override
+    public int priority() {
+        // small file which is needed on the next launch
+        return 10;
+    }
+
     @Override
     public void load(HashCode initHash, Path artifactLocation) throws IOException {
         ToadSync.OBJECTS.readTitle(artifactLocation);
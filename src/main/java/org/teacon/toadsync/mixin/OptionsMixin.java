@@ -20,9 +20,6 @@ package org.teacon.toadsync.mixin;
 
 import net.minecraft.client.Options;
 import net.minecraft.nbt.CompoundTag;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ProxyWriter;
-import org.apache.commons.io.output.StringBuilderWriter;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
@@ -31,7 +28,6 @@ import org.spongepowered.asm.mixin.injection.ModifyArg;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.teacon.toadsync.ToadSync;
 
-import java.io.IOException;
 import java.io.Writer;
 
 @Mixin(Options.class)
@@ -42,17 +38,12 @@ public abstract class OptionsMixin {
 
     @ModifyArg(method = "save()V", at = @At(value = "INVOKE", target = "Ljava/io/PrintWriter;<init>(Ljava/io/Writer;)V"))
     public Writer onPrintWriterInit(Writer inner) {
-        var builder = new StringBuilder(IOUtils.DEFAULT_BUFFER_SIZE);
-        return new ProxyWriter(new StringBuilderWriter(builder)) {
-            @Override
-            public void close() throws IOException {
-                ToadSync.OBJECTS.beforeOptionsSave(builder);
-                var builderChars = new char[builder.length()];
-                builder.getChars(0, builderChars.length, builderChars, 0);
-                inner.write(builderChars, 0, builderChars.length);
-                inner.close();
-            }
-        };
+        return ToadSync.OBJECTS.beforeOptionsSave(inner);
+    }
+
+    @Inject(method = "load(Z)V", at = @At("HEAD"))
+    public void beforeLoad(boolean limited, CallbackInfo ci) {
+        ToadSync.OBJECTS.awaitStartupGate();
     }
 
     @ModifyArg(method = "load(Z)V", at = @At(value = "INVOKE", target = "Lnet/minecraft/client/Options;dataFix(Lnet/minecraft/nbt/CompoundTag;)Lnet/minecraft/nbt/CompoundTag;"))
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OptionsSaveFilterTest {
+    private static final OptionsIndex INDEX = OptionsIndex.of(Map.of(
+            "lang", "en_us", "lastServer", "example.com:25565", "guiScale", "2"));
+
+    @Test
+    void unchanged() throws IOException {
+        var options = "version:3955\nlang:en_us\nlastServer:example.com:25565\nguiScale:2\n";
+        assertEquals(options + ignored("[]"), save(options));
+    }
+
+    @Test
+    void changed() throws IOException {
+        var options = "lang:zh_cn\nlastServer:example.com:25565\nguiScale:2\nfov:0.5\n";
+        assertEquals(options + ignored("[\"lang\"]"), save(options));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"example.com", "example.com:", "example.com:2556", "example.com:255656", "other:25565"})
+    void colonsInValues(String lastServer) throws IOException {
+        // only the first colon separates the key, and the rest of the value is compared as a whole
+        var options = "lastServer:" + lastServer + "\n";
+        assertEquals(options + ignored("[\"lastServer\"]"), save(options));
+    }
+
+    @Test
+    void lineSeparators() throws IOException {
+        // CRLF counts as a single separator, and neither CR nor LF ever becomes a part of the keys or values
+        var options = "lang:en_us\r\nguiScale:3\r\nlastServer:example.com:25565\rversion:3955\n";
+        assertEquals(options + ignored("[\"guiScale\"]"), save(options));
+    }
+
+    @Test
+    void emptyLines() throws IOException {
+        var options = "\r\n\nlang:en_us\r\n\r\nguiScale:2\n\n";
+        assertEquals(options + ignored("[]"), save(options));
+    }
+
+    @Test
+    void missingLastSeparator() throws IOException {
+        var options = "guiScale:2\nlang:en_u";
+        assertEquals(options + ignored("[\"lang\"]"), save(options));
+    }
+
+    @Test
+    void splitWrites() throws IOException {
+        // keys, values and CRLF may be split across writes
+        var options = "lang:en_us\r\nlastServer:example.com:25566\r\nguiScale:2\r\n";
+        var out = new StringWriter();
+        try (var filter = new OptionsSaveFilter(out, INDEX)) {
+            for (var i = 0; i < options.length(); i += 3) {
+                filter.write(options, i, Math.min(3, options.length() - i));
+            }
+        }
+        assertEquals(options + ignored("[\"lastServer\"]"), out.toString());
+        out = new StringWriter();
+        try (var filter = new OptionsSaveFilter(out, INDEX)) {
+            for (var c : options.toCharArray()) {
+                filter.write(c);
+            }
+        }
+        assertEquals(options + ignored("[\"lastServer\"]"), out.toString());
+    }
+
+    private static String save(String options) throws IOException {
+        var out = new StringWriter();
+        try (var filter = new OptionsSaveFilter(out, INDEX)) {
+            filter.write(options.toCharArray());
+        }
+        return out.toString();
+    }
+
+    private static String ignored(String json) {
+        return OptionsSaveFilter.TOAD_SYNC_IGNORE + ":" + json + System.lineSeparator();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.electronwill.nightconfig.toml.TomlParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DataUriInputStreamTest {
+    private static final String EMPTY_SHA_256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "data:,Hello                               | Hello",
+            "data:text/plain;base64,SGVsbG8=           | Hello",
+            "data:;base64,SGVsbG8=                     | Hello",
+            "data:text/plain;BASE64,SGVsbG8=           | Hello",
+            "data:text/plain;name=a;base64,SGVsbG8=    | Hello",
+            // base64 is only decided by the last parameter before the comma
+            "data:text/plain;base64;x=y,SGVsbG8=       | SGVsbG8=",
+            "data:text/plain;xbase64,SGVsbG8=          | SGVsbG8=",
+            "data:text/plain,;base64                   | ;base64"})
+    void mediaType(String uri, String expected) throws IOException {
+        assertEquals(expected, read(uri));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "data:,%48%65llo                           | Hello",
+            "data:,%4a%4A                              | JJ",
+            "data:,a%2Cb                               | a,b"})
+    void percentEscapes(String uri, String expected) throws IOException {
+        assertEquals(expected, read(uri));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"data:,%", "data:,%4", "data:,%zz", "data:,%4g", "data:,a%4#fragment"})
+    void badPercentEscapes(String uri) {
+        // malformed escapes are rejected when the meta is read, so that they never reach the stream
+        var toml = "[sync.entry]\nhash = \"" + EMPTY_SHA_256 + "\"\nfile = \"" + uri + "\"\n";
+        assertThrows(ParsingException.class, () -> RemoteMeta.of().read(new TomlParser().parse(toml)));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "data:,Hello#fragment                      | Hello",
+            "data:,Hello#                              | Hello",
+            "data:,a%23b#fragment                      | a#b",
+            "data:text/plain;base64,SGVsbG8=#fragment  | Hello"})
+    void fragments(String uri, String expected) throws IOException {
+        assertEquals(expected, read(uri));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"data:Hello", "data:text/plain#,Hello", "http://example.com/,Hello"})
+    void invalidUris(String uri) {
+        assertThrows(IOException.class, () -> read(uri));
+    }
+
+    @Test
+    void singleBytes() throws IOException {
+        try (var in = DataUriInputStream.open(URI.create("data:,a%FFb"))) {
+            assertEquals('a', in.read());
+            assertEquals(0xFF, in.read());
+            assertEquals('b', in.read());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void binaryPayload() throws IOException {
+        var bytes = new byte[256];
+        for (var i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        var uri = new StringBuilder("data:application/octet-stream,");
+        for (var b : bytes) {
+            uri.append('%').append(String.format("%02X", b & 0xFF));
+        }
+        try (var in = DataUriInputStream.open(URI.create(uri.toString()))) {
+            assertArrayEquals(bytes, in.readAllBytes());
+        }
+    }
+
+    private static String read(String uri) throws IOException {
+        try (var in = DataUriInputStream.open(URI.create(uri))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloadSchedulerTest {
+    private final DownloadScheduler scheduler = new DownloadScheduler(new BandwidthGovernor());
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, CompletableFuture<String>> running = new HashMap<>();
+
+    @Test
+    void globalLimit() {
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(2, 2, 1024));
+        this.submit(0, "owner", "a.example.com", "a");
+        this.submit(0, "owner", "b.example.com", "b");
+        this.submit(0, "owner", "c.example.com", "c");
+        assertEquals(List.of("a", "b"), this.started);
+        this.finish("b");
+        assertEquals(List.of("a", "b", "c"), this.started);
+    }
+
+    @Test
+    void perHostLimit() {
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(4, 1, 1024));
+        this.submit(0, "owner", "a.example.com", "a1");
+        this.submit(0, "owner", "a.example.com", "a2");
+        this.submit(0, "owner", "b.example.com", "b1");
+        // the second transfer of the same host waits, while the other host is not held up by it
+        assertEquals(List.of("a1", "b1"), this.started);
+        this.finish("b1");
+        assertEquals(List.of("a1", "b1"), this.started);
+        this.finish("a1");
+        assertEquals(List.of("a1", "b1", "a2"), this.started);
+    }
+
+    @Test
+    void ports() {
+        // hosts are told apart by their authorities, so that the same host with other ports is another connection
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(4, 1, 1024));
+        this.submit(0, "owner", "a.example.com", "a1");
+        this.submit(0, "owner", "a.example.com:8443", "a2");
+        assertEquals(List.of("a1", "a2"), this.started);
+    }
+
+    @Test
+    void priority() {
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(1, 1, 1024));
+        this.submit(0, "owner", "a.example.com", "blocker");
+        this.submit(0, "low", "a.example.com", "low1");
+        this.submit(10, "high", "a.example.com", "high");
+        this.submit(0, "low", "a.example.com", "low2");
+        this.submit(-10, "lowest", "a.example.com", "lowest");
+        this.finish("blocker");
+        this.finish("high");
+        this.finish("low1");
+        this.finish("low2");
+        assertEquals(List.of("blocker", "high", "low1", "low2", "lowest"), this.started);
+    }
+
+    @Test
+    void fewestRunningOwnerFirst() {
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(2, 2, 1024));
+        this.submit(0, "busy", "a.example.com", "busy1");
+        this.submit(0, "other", "b.example.com", "other1");
+        this.submit(0, "busy", "c.example.com", "busy2");
+        this.submit(0, "idle", "c.example.com", "idle1");
+        // the owner without running transfers goes first, even if it is submitted later
+        this.finish("other1");
+        assertEquals(List.of("busy1", "other1", "idle1"), this.started);
+        this.finish("idle1");
+        assertEquals(List.of("busy1", "other1", "idle1", "busy2"), this.started);
+    }
+
+    @Test
+    void cancelWaiting() {
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(1, 1, 1024));
+        this.submit(0, "owner", "a.example.com", "a");
+        var cancelled = this.submit(0, "owner", "a.example.com", "b");
+        this.submit(0, "owner", "a.example.com", "c");
+        cancelled.cancel(true);
+        this.finish("a");
+        assertEquals(List.of("a", "c"), this.started);
+    }
+
+    @Test
+    void cancelRunning() {
+        this.scheduler.limit(new RemoteMeta.DownloadLimits(1, 1, 1024));
+        var result = this.submit(0, "owner", "a.example.com", "a");
+        this.submit(0, "owner", "a.example.com", "b");
+        result.cancel(true);
+        // the transfer is cancelled as well, which releases its slot
+        assertTrue(this.running.get("a").isCancelled());
+        assertEquals(List.of("a", "b"), this.started);
+    }
+
+    @Test
+    void results() {
+        var result = this.submit(0, "owner", "a.example.com", "a");
+        this.finish("a");
+        assertEquals("a", result.join());
+        var failed = this.submit(0, "owner", "a.example.com", "b");
+        this.running.get("b").completeExceptionally(new IllegalStateException("b"));
+        assertTrue(failed.isCompletedExceptionally());
+    }
+
+    private CompletableFuture<String> submit(int priority, String owner, String host, String name) {
+        return this.scheduler.submit(priority, owner, URI.create("https://" + host + "/" + name), () -> {
+            var pending = new CompletableFuture<String>();
+            this.started.add(name);
+            this.running.put(name, pending);
+            return pending;
+        });
+    }
+
+    private void finish(String name) {
+        this.running.get(name).complete(name);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FailedTransfersTest {
+    private static final RemoteMeta.Entry ENTRY = entry(
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    private static final RemoteMeta.Entry OTHER = entry(
+            "185f8db32271fe25f561a6fc938b2e264306ec304eda518007d1764826381969");
+
+    private final FailedTransfers failures = new FailedTransfers();
+
+    @Test
+    void backoffGrowth() {
+        assertTrue(this.failures.backoff(ENTRY).isEmpty());
+        // the backoff doubles from 30 seconds on each consecutive failure, up to an hour
+        var expected = List.of(30L, 60L, 120L, 240L, 480L, 960L, 1920L, 3600L, 3600L);
+        for (var i = 0; i < expected.size(); ++i) {
+            this.fail(ENTRY, new IOException("failure " + i));
+            assertBackoff(expected.get(i), this.failures.backoff(ENTRY));
+            assertEquals(i + 1, this.failures.consecutiveFailures());
+        }
+        assertEquals(expected.size(), this.failures.failureCount());
+    }
+
+    @Test
+    void backoffCap() {
+        // the backoff never overflows however many times a transfer fails
+        for (var i = 0; i < 100; ++i) {
+            this.fail(ENTRY, new IOException("failure " + i));
+        }
+        assertBackoff(3600L, this.failures.backoff(ENTRY));
+        assertEquals(100, this.failures.consecutiveFailures());
+    }
+
+    @Test
+    void recovery() {
+        this.fail(ENTRY, new IOException("failure"));
+        this.fail(ENTRY, new IOException("failure"));
+        this.failures.track(ENTRY, CompletableFuture.completedFuture(null));
+        assertTrue(this.failures.backoff(ENTRY).isEmpty());
+        assertEquals(0, this.failures.consecutiveFailures());
+        // the total count is kept after the recovery, and the next failure starts over from the minimum backoff
+        assertEquals(2L, this.failures.failureCount());
+        this.fail(ENTRY, new IOException("failure"));
+        assertBackoff(30L, this.failures.backoff(ENTRY));
+    }
+
+    @Test
+    void keyedByHash() {
+        this.fail(ENTRY, new IOException("failure"));
+        assertTrue(this.failures.backoff(OTHER).isEmpty());
+    }
+
+    @Test
+    void cancellationIgnored() {
+        var pending = this.failures.track(ENTRY, new CompletableFuture<>());
+        pending.cancel(true);
+        assertTrue(this.failures.backoff(ENTRY).isEmpty());
+        assertEquals(0L, this.failures.failureCount());
+    }
+
+    @Test
+    void conditionalRetry() throws IOException {
+        assertEquals(Optional.empty(), this.failures.request(ENTRY).headers().firstValue("If-None-Match"));
+        var headers = Map.of("ETag", List.of("\"v1\""), "Last-Modified", List.of("Wed, 01 Jan 2025 00:00:00 GMT"));
+        this.fail(ENTRY, new RejectedResponseException("mismatched hash", new Response(200, headers)));
+        var request = this.failures.request(ENTRY);
+        assertEquals(Optional.of("\"v1\""), request.headers().firstValue("If-None-Match"));
+        assertEquals(Optional.of("Wed, 01 Jan 2025 00:00:00 GMT"), request.headers().firstValue("If-Modified-Since"));
+        // a not modified response has no validators, and the ones of the rejected response are kept
+        this.fail(ENTRY, new RejectedResponseException("not modified", new Response(304, Map.of())));
+        assertEquals(Optional.of("\"v1\""), this.failures.request(ENTRY).headers().firstValue("If-None-Match"));
+        // any other failure forgets the validators
+        this.fail(ENTRY, new IOException("connection reset"));
+        assertEquals(Optional.empty(), this.failures.request(ENTRY).headers().firstValue("If-None-Match"));
+    }
+
+    private void fail(RemoteMeta.Entry entry, IOException e) {
+        this.failures.track(entry, CompletableFuture.failedFuture(e));
+    }
+
+    private static void assertBackoff(long expectedSeconds, Optional<Duration> actual) {
+        var seconds = actual.orElseThrow().toMillis() / 1e3;
+        assertTrue(seconds > expectedSeconds - 5L && seconds <= expectedSeconds, "unexpected backoff: " + actual);
+    }
+
+    private static RemoteMeta.Entry entry(String hash) {
+        var file = URI.create("https://example.com/toad-sync/assets.zip");
+        return new RemoteMeta.Entry(HashCode.fromString(hash), HashFormat.SHA256, file, RemoteMeta.EntryType.FILE);
+    }
+
+    private record Response(int statusCode, Map<String, List<String>> headerMap) implements HttpResponse<Void> {
+        @Override
+        public HttpRequest request() {
+            return HttpRequest.newBuilder(URI.create("https://example.com/toad-sync/assets.zip")).build();
+        }
+
+        @Override
+        public Optional<HttpResponse<Void>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(this.headerMap, (name, value) -> true);
+        }
+
+        @Override
+        public Void body() {
+            return null;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return this.request().uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_2;
+        }
+    }
+}
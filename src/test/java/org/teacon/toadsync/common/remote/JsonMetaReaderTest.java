@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.electronwill.nightconfig.core.io.ParsingException;
+import com.electronwill.nightconfig.toml.TomlParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonMetaReaderTest {
+    private static final String HASH_A = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final String HASH_B = "185f8db32271fe25f561a6fc938b2e264306ec304eda518007d1764826381969";
+    private static final URI MANIFEST = URI.create("https://example.com/toad-sync/assets.toml");
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "application/json                 | remote = 1  | true",
+            "Application/JSON; charset=utf-8  | remote = 1  | true",
+            "application/vnd.toad-sync+json   | remote = 1  | true",
+            "application/toml                 | '{}'        | false",
+            "text/plain                       | '  {}'      | true",
+            "                                 | '\uFEFF{}'  | true",
+            "                                 | remote = 1  | false",
+            "                                 | ''          | false"})
+    void detection(String contentType, String content, boolean json) throws IOException {
+        assertEquals(json, JsonMetaReader.isJson(contentType, content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void sameMetaAsToml() throws ParsingException {
+        var toml = """
+                remote = "https://example.com/toad-sync/meta.toml"
+                interval = 60
+                [sync.assets]
+                hash = "%s"
+                file = "assets.zip"
+                [sync.options]
+                hash = "%s"
+                file = "https://cdn.example.com/options.txt"
+                [sync.options.next]
+                hash = "%s"
+                file = "options-next.txt"
+                activate-at = 2030-01-01T00:00:00Z
+                """.formatted(HASH_A, HASH_A, HASH_B);
+        var json = """
+                {"remote": "https://example.com/toad-sync/meta.toml", "interval": 60, "sync": {
+                  "assets": {"hash": "%s", "file": "assets.zip"},
+                  "options": {"hash": "%s", "file": "https://cdn.example.com/options.txt",
+                    "next": {"hash": "%s", "file": "options-next.txt", "activate-at": "2030-01-01T00:00:00Z"}}
+                }}
+                """.formatted(HASH_A, HASH_A, HASH_B);
+        var expected = RemoteMeta.of().read(new TomlParser().parse(toml));
+        var actual = RemoteMeta.of().readJson(new StringReader(json));
+        assertEquals(expected, actual);
+        assertEquals(Duration.ofSeconds(60), actual.interval().orElseThrow());
+        var assets = actual.syncEntries().get("assets");
+        assertEquals(URI.create("https://example.com/toad-sync/assets.zip"), assets.file());
+        var next = actual.syncEntries().get("options").next();
+        assertEquals(URI.create("https://example.com/toad-sync/options-next.txt"), next.entry().file());
+    }
+
+    @Test
+    void remoteAfterSyncEntries() throws ParsingException {
+        // the remote is only known at the end of the document, and relative files are still resolved against it
+        var json = """
+                {"sync": {"assets": {"hash": "%s", "file": "assets.zip"}},
+                 "remote": "https://example.com/toad-sync/meta.json", "interval": 60}
+                """.formatted(HASH_A);
+        var meta = RemoteMeta.of().readJson(new StringReader(json));
+        var assets = meta.syncEntries().get("assets");
+        assertEquals(URI.create("https://example.com/toad-sync/assets.zip"), assets.file());
+    }
+
+    @Test
+    void ignoredSyncEntries() throws ParsingException {
+        // non-table sync entries and unknown keys are ignored, which is the same as the TOML encoding
+        var json = """
+                {"sync": {"assets": {"hash": "%s", "file": "https://example.com/a.zip", "comment": [1, {}]},
+                 "flag": true, "list": [1, 2]}}
+                """.formatted(HASH_A);
+        var meta = RemoteMeta.of().readJson(new StringReader(json));
+        assertEquals(List.of("assets"), List.copyOf(meta.syncEntries().keySet()));
+    }
+
+    @Test
+    void previousEntriesKept() throws ParsingException {
+        // the entries read last time keep their positions, and the ones read again are replaced
+        var first = """
+                {"sync": {"assets": {"hash": "%s", "file": "https://example.com/a.zip"},
+                 "options": {"hash": "%s", "file": "https://example.com/o.txt"}}}
+                """.formatted(HASH_A, HASH_A);
+        var second = """
+                {"sync": {"packs": {"hash": "%s", "file": "https://example.com/p.zip"},
+                 "assets": {"hash": "%s", "file": "https://example.com/a.zip"}}}
+                """.formatted(HASH_A, HASH_B);
+        var meta = RemoteMeta.of().readJson(new StringReader(first)).readJson(new StringReader(second));
+        assertEquals(List.of("assets", "options", "packs"), List.copyOf(meta.syncEntries().keySet()));
+        assertEquals(HASH_B, meta.syncEntries().get("assets").hash().toString());
+    }
+
+    @Test
+    void numbers() throws ParsingException {
+        var config = JsonMetaReader.readConfig(new StringReader("{\"a\": 1, \"b\": 5000000000, \"c\": 1.5}"));
+        assertInstanceOf(Integer.class, config.get("a"));
+        assertInstanceOf(Long.class, config.get("b"));
+        assertInstanceOf(Double.class, config.get("c"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"[]", "{} {}", "{\"a\": 1", "{\"interval\": -1}", "{\"sync\": {\"a\": {\"hash\": 1}}}"})
+    void invalidMetas(String json) {
+        assertThrows(ParsingException.class, () -> RemoteMeta.of().readJson(new StringReader(json)));
+    }
+
+    @Test
+    void sameManifestAsToml() throws ParsingException {
+        var toml = """
+                [[files]]
+                name = "a.png"
+                hash = "%s"
+                file = "files/a.png"
+                [[files]]
+                name = "b.png"
+                hash = "%s"
+                file = "data:,"
+                """.formatted(HASH_B, HASH_A);
+        var json = """
+                {"files": [{"name": "a.png", "hash": "%s", "file": "files/a.png"},
+                 {"name": "b.png", "hash": "%s", "file": "data:,"}]}
+                """.formatted(HASH_B, HASH_A);
+        var expected = RemoteManifest.read(new TomlParser().parse(toml), MANIFEST);
+        var actual = RemoteManifest.readJson(new StringReader(json), MANIFEST);
+        assertEquals(expected, actual);
+        assertEquals(List.of("a.png", "b.png"), List.copyOf(actual.files().keySet()));
+        assertEquals(URI.create("https://example.com/toad-sync/files/a.png"), actual.files().get("a.png").file());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{}",
+            "{\"files\": {}}",
+            "{\"files\": [1]}",
+            "{\"files\": [{\"name\": \"../a.png\", \"hash\": \"" + HASH_A + "\", \"file\": \"data:,\"}]}",
+            "{\"files\": [{\"name\": \"a.png\", \"hash\": \"" + HASH_A + "\", \"file\": \"data:,\"},"
+                    + " {\"name\": \"a.png\", \"hash\": \"" + HASH_A + "\", \"file\": \"data:,\"}]}"})
+    void invalidManifests(String json) {
+        assertThrows(ParsingException.class, () -> RemoteManifest.readJson(new StringReader(json), MANIFEST));
+    }
+}
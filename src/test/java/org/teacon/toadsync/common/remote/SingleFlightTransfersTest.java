@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2025 TeaConMC <contact@teacon.org>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.teacon.toadsync.common.remote;
+
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTransfersTest {
+    private static final HashCode HASH = HashCode.fromString(
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    private static final HashCode OTHER_HASH = HashCode.fromString(
+            "185f8db32271fe25f561a6fc938b2e264306ec304eda518007d1764826381969");
+
+    private final SingleFlightTransfers transfers = new SingleFlightTransfers();
+    private final List<CompletableFuture<TempDownloadFile>> started = new ArrayList<>();
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void singleRequester() throws IOException {
+        var waiter = this.fetch(HASH);
+        var temp = this.land(0, "content");
+        // the only requester takes the transferred file itself
+        assertEquals(temp.retrieve(), waiter.join().retrieve());
+        assertEquals(1, this.started.size());
+    }
+
+    @Test
+    void sharedTransfer() throws IOException {
+        var first = this.fetch(HASH);
+        var second = this.fetch(HASH);
+        assertEquals(1, this.started.size());
+        this.land(0, "content");
+        var firstFile = first.join().retrieve();
+        var secondFile = second.join().retrieve();
+        // every requester receives its own file, and the shared one is removed once all of them are created
+        assertNotEquals(firstFile, secondFile);
+        assertEquals("content", Files.readString(firstFile));
+        assertEquals("content", Files.readString(secondFile));
+        assertEquals(List.of(firstFile, secondFile).stream().sorted().toList(), this.files());
+    }
+
+    @Test
+    void cancelOneOfWaiters() throws IOException {
+        var first = this.fetch(HASH);
+        var cancelled = this.fetch(HASH);
+        var third = this.fetch(HASH);
+        cancelled.cancel(true);
+        // the transfer goes on for the requesters left, and later requesters still join it
+        assertFalse(this.started.getFirst().isCancelled());
+        var fourth = this.fetch(HASH);
+        assertEquals(1, this.started.size());
+        this.land(0, "content");
+        var files = List.of(first.join().retrieve(), third.join().retrieve(), fourth.join().retrieve());
+        assertEquals(files.stream().sorted().toList(), this.files());
+        for (var file : files) {
+            assertEquals("content", Files.readString(file));
+        }
+    }
+
+    @Test
+    void cancelAllWaiters() {
+        var first = this.fetch(HASH);
+        var second = this.fetch(HASH);
+        first.cancel(true);
+        second.cancel(true);
+        // the transfer is cancelled with its last requester, so that the next request starts another one
+        assertTrue(this.started.getFirst().isCancelled());
+        this.fetch(HASH);
+        assertEquals(2, this.started.size());
+    }
+
+    @Test
+    void differentContents() {
+        this.fetch(HASH);
+        this.fetch(OTHER_HASH);
+        var blake3 = this.transfers.fetch(HashFormat.BLAKE3, HASH, this.transfer());
+        assertEquals(3, this.started.size());
+        assertFalse(blake3.isDone());
+    }
+
+    @Test
+    void failure() throws IOException {
+        var first = this.fetch(HASH);
+        var second = this.fetch(HASH);
+        this.started.getFirst().completeExceptionally(new IOException("broken"));
+        for (var waiter : List.of(first, second)) {
+            var e = assertThrows(CompletionException.class, waiter::join);
+            assertInstanceOf(IOException.class, e.getCause());
+        }
+        assertEquals(List.of(), this.files());
+    }
+
+    private CompletableFuture<TempDownloadFile> fetch(HashCode hash) {
+        return this.transfers.fetch(HashFormat.SHA256, hash, this.transfer());
+    }
+
+    private Supplier<CompletableFuture<TempDownloadFile>> transfer() {
+        return () -> {
+            var pending = new CompletableFuture<TempDownloadFile>();
+            this.started.add(pending);
+            return pending;
+        };
+    }
+
+    private TempDownloadFile land(int index, String content) throws IOException {
+        var temp = TempDownloadFile.create(this.dir);
+        Files.writeString(temp.retrieve(), content);
+        this.started.get(index).complete(temp);
+        return temp;
+    }
+
+    private List<Path> files() throws IOException {
+        try (var list = Files.list(this.dir)) {
+            return list.sorted().toList();
+        }
+    }
+}